@@ -0,0 +1,144 @@
+package org.jmx;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.jmx.bench.SyntheticMBeans;
+import org.jmx.config.JvmInstanceConfiguration;
+import org.jmx.connection.ConnectionMetaData;
+import org.jmx.connection.ConnectionTelemetry;
+import org.jmx.connection.ConnectionTimeouts;
+import org.jmx.connection.JmxConnection;
+import org.jmx.sink.MetricKind;
+import org.jmx.sink.MetricSeries;
+import org.jmx.sink.MetricSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * One poll of a JVM exposing the synthetic MBeans: {@code processAttributes} replays attribute values read once at setup, so it
+ * isolates the per-metric cost of unpacking, counter state and sink handoff; {@code fetchAndProcess} includes the getAttributes
+ * calls against the in-process platform MBeanServer. Scores are polls per second; divide by the metric count to compare shapes.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ProcessAttributeBenchmark {
+
+    @Param( { "10", "100" } )
+    public int mbeanCount;
+
+    @Param( { "4", "16" } )
+    public int numericAttributes;
+
+    @Param( { "0", "2" } )
+    public int compositeAttributes;
+
+    private SyntheticMBeans mbeans;
+    private ExecutorService executor;
+    private JmxConnection connection;
+    private FetchPlan fetchPlan;
+    private AttributeList[] values;
+    private AttributeProcessor processor;
+    private CountingSink sink;
+    private long sampledAtMs;
+
+    @Setup( Level.Trial )
+    public void setUp() throws JMException, IOException {
+        mbeans = new SyntheticMBeans( mbeanCount, numericAttributes, compositeAttributes );
+
+        JvmInstanceConfiguration configuration = new JvmInstanceConfiguration();
+        configuration.setTags( ImmutableList.of( "jvm-type:bench" ) );
+        configuration.setMetricSet( mbeans.metricSet() );
+        ConnectionMetaData metaData = new ConnectionMetaData( "bench", new Properties(), null, configuration, "node-1" );
+
+        executor = Executors.newCachedThreadPool();
+        ConnectionTimeouts timeouts = new ConnectionTimeouts( executor, executor, 5000, 5000, 5000, ConnectionTelemetry.NONE );
+        // never connected: reads go straight to the platform MBeanServer, the connector is only there to be closed
+        JMXConnector connector = JMXConnectorFactory.newJMXConnector( new JMXServiceURL( "service:jmx:rmi:///jndi/rmi://127.0.0.1:1/bench" ), null );
+        connection = new JmxConnection( connector, mbeans.getMBeanServer(), metaData, timeouts );
+        fetchPlan = FetchPlan.build( connection, configuration.getMetricSet() );
+
+        List<FetchPlan.Entry> entries = fetchPlan.getEntries();
+        values = new AttributeList[ entries.size() ];
+        for( int i = 0; i < values.length; i++ ) {
+            values[ i ] = mbeans.getMBeanServer().getAttributes( entries.get( i ).getObjectName(), entries.get( i ).getAttributeNames() );
+        }
+
+        sink = new CountingSink();
+        processor = new AttributeProcessor( new CounterStateStore( 16, TimeUnit.HOURS.toMillis( 1 ) ), sink, new MetricsMXBean() );
+        sampledAtMs = System.currentTimeMillis();
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws JMException {
+        executor.shutdownNow();
+        mbeans.close();
+    }
+
+    @Benchmark
+    public long processAttributes() {
+        // counters need a strictly increasing timestamp to produce a delta
+        long timestampMs = ++sampledAtMs;
+        List<FetchPlan.Entry> entries = fetchPlan.getEntries();
+        for( int i = 0; i < values.length; i++ ) {
+            for( Object attr : values[ i ] ) {
+                processor.processAttribute( entries.get( i ), (Attribute) attr, timestampMs );
+            }
+        }
+        return sink.written;
+    }
+
+    @Benchmark
+    public long fetchAndProcess() throws Exception {
+        long timestampMs = ++sampledAtMs;
+        for( FetchPlan.Entry entry : fetchPlan.getEntries() ) {
+            for( Object attr : connection.getAttributes( entry.getObjectName(), entry.getAttributeNames() ) ) {
+                processor.processAttribute( entry, (Attribute) attr, timestampMs );
+            }
+        }
+        return sink.written;
+    }
+
+    private static final class CountingSink implements MetricSink {
+        private long written;
+        private double sum;
+
+        @Override
+        public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+            written++;
+            sum += value;
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.jmx.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * An MBean with {@code numericAttributes} long attributes named {@code Numeric0..n} and {@code compositeAttributes}
+ * MemoryUsage-shaped composite attributes named {@code Composite0..n}. Values grow on every read so nothing upstream can
+ * cache them, and they work as both gauges and counters. The load test also uses it, with every read first waiting
+ * {@code delayMs} to simulate slow and hanging MBeans.
+ */
+public final class SyntheticMBean implements DynamicMBean {
+    public static final String[] COMPOSITE_ITEMS = { "init", "used", "committed", "max" };
+    private static final CompositeType USAGE_TYPE = usageType();
+
+    private final int numericAttributes;
+    private final int compositeAttributes;
+    private final long delayMs;
+    private final MBeanInfo info;
+    private final AtomicLong reads = new AtomicLong();
+
+    public SyntheticMBean( int numericAttributes, int compositeAttributes ) {
+        this( numericAttributes, compositeAttributes, 0 );
+    }
+
+    public SyntheticMBean( int numericAttributes, int compositeAttributes, long delayMs ) {
+        this.numericAttributes = numericAttributes;
+        this.compositeAttributes = compositeAttributes;
+        this.delayMs = delayMs;
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ numericAttributes + compositeAttributes ];
+        for( int i = 0; i < numericAttributes; i++ ) {
+            attributes[ i ] = new MBeanAttributeInfo( "Numeric" + i, long.class.getName(), "", true, false, false );
+        }
+        for( int i = 0; i < compositeAttributes; i++ ) {
+            attributes[ numericAttributes + i ] = new MBeanAttributeInfo( "Composite" + i, CompositeData.class.getName(), "", true, false, false );
+        }
+        this.info = new MBeanInfo( getClass().getName(), "synthetic", attributes, null, new MBeanOperationInfo[ 0 ], null );
+    }
+
+    private static CompositeType usageType() {
+        try {
+            OpenType<?>[] types = new OpenType<?>[ COMPOSITE_ITEMS.length ];
+            for( int i = 0; i < types.length; i++ ) {
+                types[ i ] = SimpleType.LONG;
+            }
+            return new CompositeType( "Usage", "synthetic usage", COMPOSITE_ITEMS, COMPOSITE_ITEMS, types );
+        } catch( OpenDataException e ) {
+            throw Throwables.propagate( e );
+        }
+    }
+
+    @Override
+    public Object getAttribute( String attribute ) throws AttributeNotFoundException {
+        delay();
+        return read( attribute );
+    }
+
+    private Object read( String attribute ) throws AttributeNotFoundException {
+        long value = reads.incrementAndGet();
+        if( attribute.startsWith( "Numeric" ) && index( attribute, "Numeric" ) < numericAttributes ) {
+            return value;
+        }
+        if( attribute.startsWith( "Composite" ) && index( attribute, "Composite" ) < compositeAttributes ) {
+            try {
+                return new CompositeDataSupport( USAGE_TYPE, COMPOSITE_ITEMS, new Object[] { value, value * 2, value * 3, value * 4 } );
+            } catch( OpenDataException e ) {
+                throw Throwables.propagate( e );
+            }
+        }
+        throw new AttributeNotFoundException( attribute );
+    }
+
+    private void delay() {
+        if( delayMs > 0 ) {
+            Uninterruptibles.sleepUninterruptibly( delayMs, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    private static int index( String attribute, String prefix ) {
+        try {
+            return Integer.parseInt( attribute.substring( prefix.length() ) );
+        } catch( NumberFormatException e ) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public AttributeList getAttributes( String[] attributes ) {
+        delay();
+        AttributeList list = new AttributeList( attributes.length );
+        for( String attribute : attributes ) {
+            try {
+                list.add( new Attribute( attribute, read( attribute ) ) );
+            } catch( AttributeNotFoundException e ) {
+                // omitted, as the platform MBeans do
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute( Attribute attribute ) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public AttributeList setAttributes( AttributeList attributes ) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object invoke( String actionName, Object[] params, String[] signature ) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
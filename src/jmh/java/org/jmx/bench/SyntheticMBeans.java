@@ -0,0 +1,90 @@
+package org.jmx.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jmx.config.JmxAttribute;
+import org.jmx.config.MetricQuery;
+import org.jmx.config.MetricType;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Registers a configurable population of {@link SyntheticMBean}s on the platform MBeanServer and builds the metric queries that
+ * select them, so benchmarks measure the collector against a known MBean count and shape.
+ */
+public final class SyntheticMBeans implements AutoCloseable {
+    public static final String DOMAIN = "bench.synthetic";
+
+    private final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final int numericAttributes;
+    private final int compositeAttributes;
+    private final List<ObjectName> objectNames;
+
+    public SyntheticMBeans( int mbeanCount, int numericAttributes, int compositeAttributes ) throws JMException {
+        this.numericAttributes = numericAttributes;
+        this.compositeAttributes = compositeAttributes;
+        List<ObjectName> objectNames = new ArrayList<>( mbeanCount );
+        for( int i = 0; i < mbeanCount; i++ ) {
+            // camel-case names exercise the alias splitting the way "PS MarkSweep" style names do
+            ObjectName objectName = new ObjectName( DOMAIN + ":type=SyntheticPool,name=Pool Space" + i );
+            if( mbeanServer.isRegistered( objectName ) ) {
+                mbeanServer.unregisterMBean( objectName );
+            }
+            mbeanServer.registerMBean( new SyntheticMBean( numericAttributes, compositeAttributes ), objectName );
+            objectNames.add( objectName );
+        }
+        this.objectNames = ImmutableList.copyOf( objectNames );
+    }
+
+    public MBeanServer getMBeanServer() {
+        return mbeanServer;
+    }
+
+    public List<ObjectName> getObjectNames() {
+        return objectNames;
+    }
+
+    /**
+     * @return a single query selecting every synthetic MBean with one metric per numeric attribute and per composite item,
+     * alternating between the three metric types
+     */
+    public List<MetricQuery> metricSet() throws JMException {
+        List<JmxAttribute> attributes = new ArrayList<>();
+        for( int i = 0; i < numericAttributes; i++ ) {
+            attributes.add( attribute( "Numeric" + i, MetricType.values()[ i % MetricType.values().length ] ) );
+        }
+        for( int i = 0; i < compositeAttributes; i++ ) {
+            for( String item : SyntheticMBean.COMPOSITE_ITEMS ) {
+                attributes.add( attribute( "Composite" + i + "." + item, MetricType.GAUGE ) );
+            }
+        }
+        MetricQuery query = new MetricQuery();
+        query.setPattern( new ObjectName( DOMAIN + ":type=SyntheticPool,name=*" ) );
+        query.setAttributes( attributes );
+        query.index();
+        return ImmutableList.of( query );
+    }
+
+    private static JmxAttribute attribute( String name, MetricType type ) {
+        JmxAttribute attribute = new JmxAttribute();
+        attribute.setName( name );
+        attribute.setAlias( "bench.#{type}.#{name}.#{attr}" );
+        attribute.setType( type );
+        return attribute;
+    }
+
+    @Override
+    public void close() throws JMException {
+        for( ObjectName objectName : objectNames ) {
+            if( mbeanServer.isRegistered( objectName ) ) {
+                mbeanServer.unregisterMBean( objectName );
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.jmx.config;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.jmx.bench.SyntheticMBeans;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of turning an alias such as {@code jvm.#{type}.#{name}.#{attr}} into a metric name, both compiling it at configuration
+ * load and resolving it against the ObjectNames of the synthetic MBeans.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class AliasTemplateBenchmark {
+    private static final String ALIAS = "jvm.#{type}.#{name}.#{attr}";
+
+    @Param( { "10", "1000" } )
+    public int mbeanCount;
+
+    private SyntheticMBeans mbeans;
+    private List<ObjectName> objectNames;
+    private AliasTemplate template;
+    private int next;
+
+    @Setup( Level.Trial )
+    public void setUp() throws JMException {
+        mbeans = new SyntheticMBeans( mbeanCount, 1, 0 );
+        objectNames = mbeans.getObjectNames();
+        template = AliasTemplate.compile( ALIAS, "CollectionTime", null );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws JMException {
+        mbeans.close();
+    }
+
+    @Benchmark
+    public String resolve() {
+        ObjectName objectName = objectNames.get( next );
+        next = next + 1 == objectNames.size() ? 0 : next + 1;
+        return template.resolve( objectName );
+    }
+
+    @Benchmark
+    public AliasTemplate compile() {
+        return AliasTemplate.compile( ALIAS, "Usage", "committed" );
+    }
+}
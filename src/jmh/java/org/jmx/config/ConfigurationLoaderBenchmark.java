@@ -0,0 +1,91 @@
+package org.jmx.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jmx.JmxCollectorMain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Full configuration load: the instance configuration, the built-in metric sets and a generated metric set of configurable size,
+ * parsed with the same ObjectMapper the collector uses and indexed.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ConfigurationLoaderBenchmark {
+
+    @Param( { "10", "200" } )
+    public int metricQueries;
+
+    @Param( { "4" } )
+    public int attributesPerQuery;
+
+    private File directory;
+    private FileSystemResource config;
+    private ConfigurationLoader configurationLoader;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new JmxCollectorMain().objectMapper();
+        directory = Files.createTempDirectory( "jmx-collector-bench" ).toFile();
+
+        List<Map<String, Object>> queries = new ArrayList<>();
+        for( int q = 0; q < metricQueries; q++ ) {
+            List<Map<String, Object>> attributes = new ArrayList<>();
+            for( int a = 0; a < attributesPerQuery; a++ ) {
+                attributes.add( ImmutableMap.of( "name", "Attribute" + a, "alias", "bench.#{type}.#{name}.#{attr}", "type",
+                  a % 2 == 0 ? "gauge" : "counter" ) );
+            }
+            queries.add( ImmutableMap.of( "pattern", "bench.synthetic:type=Query" + q + ",name=*", "attributes", attributes ) );
+        }
+        objectMapper.writeValue( new File( directory, "metrics.json" ), queries );
+
+        Map<String, Object> instance = ImmutableMap.of( "jvmSelector", "#appArgs.contains('bench')", "jvmNameExtractor", "'bench'", "tags",
+          ImmutableList.of( "jvm-type:bench" ), "metricSetRefs", ImmutableList.of( "metrics.json" ) );
+        File configFile = new File( directory, "config.json" );
+        Files.write( configFile.toPath(), objectMapper.writeValueAsString( ImmutableList.of( instance ) ).getBytes( StandardCharsets.UTF_8 ) );
+
+        config = new FileSystemResource( configFile );
+        configurationLoader = new ConfigurationLoader( objectMapper );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        for( File file : directory.listFiles() ) {
+            Files.delete( file.toPath() );
+        }
+        Files.delete( directory.toPath() );
+    }
+
+    @Benchmark
+    public List<JvmInstanceConfiguration> loadConfiguration() {
+        return configurationLoader.loadConfiguration( config );
+    }
+}
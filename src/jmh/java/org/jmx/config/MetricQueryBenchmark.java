@@ -0,0 +1,66 @@
+package org.jmx.config;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import org.jmx.bench.SyntheticMBeans;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Attribute lookup by name within a metric query, cycling through every configured name plus one that is not configured.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MetricQueryBenchmark {
+
+    @Param( { "4", "64" } )
+    public int numericAttributes;
+
+    @Param( { "0", "4" } )
+    public int compositeAttributes;
+
+    private SyntheticMBeans mbeans;
+    private MetricQuery query;
+    private String[] names;
+    private int next;
+
+    @Setup( Level.Trial )
+    public void setUp() throws JMException {
+        mbeans = new SyntheticMBeans( 1, numericAttributes, compositeAttributes );
+        query = mbeans.metricSet().get( 0 );
+        String[] configured = query.getUniqueAttributeNames();
+        names = new String[ configured.length + 1 ];
+        System.arraycopy( configured, 0, names, 0, configured.length );
+        names[ configured.length ] = "NotConfigured";
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws JMException {
+        mbeans.close();
+    }
+
+    @Benchmark
+    public Collection<JmxAttribute> findAttributesFor() {
+        String name = names[ next ];
+        next = next + 1 == names.length ? 0 : next + 1;
+        return query.findAttributesFor( name );
+    }
+}
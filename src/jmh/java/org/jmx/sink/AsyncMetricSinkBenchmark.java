@@ -0,0 +1,64 @@
+package org.jmx.sink;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Producer-side cost of publishing a sample from several poller threads at once. The downstream sink discards everything, so
+ * this measures the ring buffer handoff; samples offered while the queue is full are dropped and still count as operations.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@Threads( 4 )
+public class AsyncMetricSinkBenchmark {
+
+    @Param( { "1", "2" } )
+    public int sinkThreads;
+
+    private AsyncMetricSink asyncSink;
+    private MetricSeries series;
+
+    @Setup( Level.Trial )
+    public void setUp() {
+        MetricSink discard = new MetricSink() {
+            @Override
+            public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        asyncSink = new AsyncMetricSink( 65536, sinkThreads, Collections.singletonList( discard ) );
+        series = new MetricSeries( "jvm.memory_pool.ps_old_gen.usage.used", new TagSet( "jvm-type:benchmark", "jvm-instance:node-1" ) );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() {
+        asyncSink.close();
+    }
+
+    @Benchmark
+    public void write() {
+        asyncSink.write( series, MetricKind.GAUGE, 42.0, 1L );
+    }
+}
@@ -0,0 +1,88 @@
+package org.jmx.statsd;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.timgroup.statsd.NonBlockingStatsDClient;
+import com.timgroup.statsd.StatsDClient;
+
+/**
+ * Emits a batch of gauges the way one poll of a single JVM would, through the packed emitter and through the statsd client it
+ * replaced. Both send to a local socket that is never read, so the kernel drops what does not fit.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StatsdEmitBenchmark {
+    private static final int METRICS_PER_POLL = 200;
+    private static final String[] TAGS = { "jvm-type:benchmark", "jvm-instance:node-1" };
+
+    private DatagramChannel sink;
+    private DogStatsdEmitter emitter;
+    private StatsDClient statsDClient;
+    private String[] names;
+    private byte[][] encodedNames;
+    private byte[] encodedTags;
+    private double[] values;
+
+    @Setup( Level.Trial )
+    public void setUp() throws IOException {
+        sink = DatagramChannel.open().bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+        int port = ((InetSocketAddress) sink.getLocalAddress()).getPort();
+        emitter = new DogStatsdEmitter( "127.0.0.1", port, 1432 );
+        statsDClient = new NonBlockingStatsDClient( "", "127.0.0.1", port, 1000 );
+
+        names = new String[ METRICS_PER_POLL ];
+        encodedNames = new byte[ METRICS_PER_POLL ][];
+        values = new double[ METRICS_PER_POLL ];
+        for( int i = 0; i < METRICS_PER_POLL; i++ ) {
+            names[ i ] = "jvm.memory_pool.pool_" + i + ".usage.used";
+            encodedNames[ i ] = DogStatsdEmitter.encodeName( names[ i ] );
+            values[ i ] = i % 2 == 0 ? i * 1024L : i * 1.25;
+        }
+        encodedTags = DogStatsdEmitter.encodeTags( TAGS );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException {
+        statsDClient.stop();
+        emitter.close();
+        sink.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( METRICS_PER_POLL )
+    public void packedEmitter() {
+        for( int i = 0; i < METRICS_PER_POLL; i++ ) {
+            emitter.gauge( encodedNames[ i ], values[ i ], encodedTags );
+        }
+        emitter.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( METRICS_PER_POLL )
+    public void nonBlockingStatsDClient() {
+        for( int i = 0; i < METRICS_PER_POLL; i++ ) {
+            statsDClient.gauge( names[ i ], values[ i ], TAGS );
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package org.jmx.loadtest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jmx.CollectorSettings;
+import org.jmx.CoreMetricsSource;
+import org.jmx.CounterStateStore;
+import org.jmx.JmxCollector;
+import org.jmx.JmxCollectorMain;
+import org.jmx.MetricsMXBean;
+import org.jmx.PollScheduler;
+import org.jmx.PollingEngine;
+import org.jmx.TargetCircuitBreaker;
+import org.jmx.bench.SyntheticMBean;
+import org.jmx.connection.ConnectionTimeouts;
+import org.jmx.connection.JmxConnectionCache;
+import org.jmx.sink.AsyncMetricSink;
+import org.jmx.sink.DogStatsdMetricSink;
+import org.jmx.sink.MetricSink;
+import org.jmx.statsd.DogStatsdEmitter;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the real collector against a fleet of simulated JVMs on loopback and reports how it keeps up: per-target poll latency,
+ * polls that overran the poll interval, metrics per second, datagrams lost between collector and agent, and the collector's heap
+ * and CPU. With {@code --forks=N} the simulated JVMs live in N child processes so that heap and CPU are the collector's alone.
+ *
+ * <pre>
+ * gradle fleetSimulation -Pargs="--jvms=200 --mbeans=500 --forks=2 --hangingJvms=2"
+ * </pre>
+ */
+public final class FleetSimulator {
+    private static final String READY = "READY";
+
+    private FleetSimulator() {
+    }
+
+    public static void main( String[] args ) throws Exception {
+        System.setProperty( "java.rmi.server.hostname", "127.0.0.1" );
+        SimulationOptions options = SimulationOptions.parse( args );
+
+        if( options.getBoolean( "serve" ) ) {
+            serve( options );
+            return;
+        }
+
+        System.out.printf( "Simulating %s%n", options );
+        List<Process> children = startFleet( options );
+        Runtime.getRuntime().addShutdownHook( new Thread( () -> children.forEach( Process::destroyForcibly ) ) );
+
+        try( StatsdListener listener = new StatsdListener() ) {
+            runCollector( options, listener );
+        }
+        System.exit( 0 );
+    }
+
+    /**
+     * Child mode: host the simulated JVMs until the parent goes away and closes our stdin.
+     */
+    private static void serve( SimulationOptions options ) throws Exception {
+        startSimulatedJvms( options );
+        System.out.println( READY );
+        System.out.flush();
+        while( System.in.read() >= 0 ) {
+        }
+        System.exit( 0 );
+    }
+
+    private static void startSimulatedJvms( SimulationOptions options ) throws Exception {
+        int jvms = options.getInt( "jvms" );
+        int basePort = options.getInt( "basePort" );
+        int slowJvms = options.getInt( "slowJvms" );
+        int hangingJvms = options.getInt( "hangingJvms" );
+        ScheduledExecutorService flapper = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat( "mbean-flapper" ).setDaemon( true ).build() );
+        for( int i = 0; i < jvms; i++ ) {
+            // slow targets are taken from the start of the range and hanging ones from the end so the two never coincide
+            new SimulatedJvm( basePort + i ).start( options, i < slowJvms, i >= jvms - hangingJvms, flapper );
+        }
+    }
+
+    private static List<Process> startFleet( SimulationOptions options ) throws Exception {
+        int forks = options.getInt( "forks" );
+        if( forks == 0 ) {
+            startSimulatedJvms( options );
+            return ImmutableList.of();
+        }
+
+        int jvms = options.getInt( "jvms" );
+        int basePort = options.getInt( "basePort" );
+        int slowJvms = options.getInt( "slowJvms" );
+        int hangingJvms = options.getInt( "hangingJvms" );
+        String java = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "java";
+        List<Process> children = new ArrayList<>();
+        CountDownLatch ready = new CountDownLatch( forks );
+        int start = 0;
+        for( int f = 0; f < forks; f++ ) {
+            int count = jvms / forks + (f < jvms % forks ? 1 : 0);
+            int slow = Math.max( 0, Math.min( start + count, slowJvms ) - start );
+            int hanging = Math.max( 0, start + count - Math.max( start, jvms - hangingJvms ) );
+
+            List<String> command = new ArrayList<>();
+            command.add( java );
+            command.add( "-cp" );
+            command.add( System.getProperty( "java.class.path" ) );
+            command.add( FleetSimulator.class.getName() );
+            command.addAll( options.toChildArgs( basePort + start, count, slow, hanging ) );
+            Process child = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+            children.add( child );
+            String name = "fleet-" + f;
+            Thread reader = new Thread( () -> relay( child, name, ready ), name );
+            reader.setDaemon( true );
+            reader.start();
+            start += count;
+        }
+        if( !ready.await( 5, TimeUnit.MINUTES ) ) {
+            throw new IllegalStateException( "Simulated JVMs did not start within 5 minutes" );
+        }
+        return children;
+    }
+
+    private static void relay( Process child, String name, CountDownLatch ready ) {
+        try( BufferedReader reader = new BufferedReader( new InputStreamReader( child.getInputStream(), StandardCharsets.UTF_8 ) ) ) {
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                if( line.equals( READY ) ) {
+                    ready.countDown();
+                } else {
+                    System.out.printf( "[%s] %s%n", name, line );
+                }
+            }
+        } catch( IOException e ) {
+            System.out.printf( "[%s] %s%n", name, e );
+        }
+    }
+
+    private static void runCollector( SimulationOptions options, StatsdListener listener ) throws Exception {
+        int pollRateMs = options.getInt( "pollRateMs" );
+        ObjectMapper objectMapper = new JmxCollectorMain().objectMapper();
+        File configFile = writeConfiguration( options, objectMapper );
+
+        // wired the way JmxCollectorMain wires it, except that the polling engine is timed
+        MetricsMXBean collectorMetrics = new MetricsMXBean();
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        TimedPollingEngine pollingEngine = new TimedPollingEngine( PollingEngine.Mode.valueOf( options.get( "pollerMode" ).toUpperCase() ), 1024, 2,
+          options.getInt( "pollerMaxConcurrency" ) );
+        PollScheduler pollScheduler = new PollScheduler( taskScheduler, pollingEngine, pollRateMs, collectorMetrics );
+        ConnectionTimeouts connectionTimeouts = new ConnectionTimeouts(
+          Executors.newCachedThreadPool( new ThreadFactoryBuilder().setNameFormat( "jmx-request-%d" ).setDaemon( true ).build() ),
+          Executors.newCachedThreadPool( new ThreadFactoryBuilder().setNameFormat( "jmx-maintenance-%d" ).setDaemon( true ).build() ), 5000, 5000,
+          options.getLong( "requestTimeoutMs" ), collectorMetrics );
+        DogStatsdEmitter emitter = new DogStatsdEmitter( "127.0.0.1", listener.getPort(), 1432 );
+        AsyncMetricSink metricSink = new AsyncMetricSink( 65536, 1, Collections.<MetricSink>singletonList( new DogStatsdMetricSink( emitter ) ) );
+
+        JmxCollector collector = new JmxCollector( collectorMetrics, configFile.getPath(), taskScheduler, pollScheduler,
+          new JmxConnectionCache( pollRateMs, connectionTimeouts, 300000 ), connectionTimeouts, new TargetCircuitBreaker( 2000, 300000, collectorMetrics ),
+          new CounterStateStore( 16, 600000 ), metricSink, objectMapper,
+          new CollectorSettings( pollRateMs, CoreMetricsSource.JMX, options.getInt( "requestWindow" ), false ) );
+        collector.run( new NoArguments() );
+
+        Reporter reporter = new Reporter( options, listener, emitter, metricSink, pollingEngine, pollScheduler, collectorMetrics );
+        long reportMs = TimeUnit.SECONDS.toMillis( options.getInt( "reportSeconds" ) );
+        long endMs = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( options.getInt( "durationSeconds" ) );
+        reporter.printHeader();
+        while( System.currentTimeMillis() < endMs ) {
+            Thread.sleep( Math.min( reportMs, Math.max( 1, endMs - System.currentTimeMillis() ) ) );
+            reporter.report();
+        }
+        reporter.printSummary();
+    }
+
+    private static File writeConfiguration( SimulationOptions options, ObjectMapper objectMapper ) throws IOException {
+        File directory = Files.createTempDirectory( "fleet-simulator" ).toFile();
+        directory.deleteOnExit();
+
+        List<Map<String, Object>> attributes = new ArrayList<>();
+        for( int i = 0; i < options.getInt( "numericAttributes" ); i++ ) {
+            attributes.add( ImmutableMap.of( "name", "Numeric" + i, "alias", "sim.#{name}.#{attr}", "type", i % 2 == 0 ? "gauge" : "counter" ) );
+        }
+        for( int i = 0; i < options.getInt( "compositeAttributes" ); i++ ) {
+            for( String item : SyntheticMBean.COMPOSITE_ITEMS ) {
+                attributes.add( ImmutableMap.of( "name", "Composite" + i + "." + item, "alias", "sim.#{name}.#{attr}" ) );
+            }
+        }
+        File metrics = new File( directory, "simulated-metrics.json" );
+        objectMapper.writeValue( metrics,
+          ImmutableList.of( ImmutableMap.of( "pattern", SimulatedJvm.DOMAIN + ":type=Synthetic,*", "attributes", attributes ) ) );
+        metrics.deleteOnExit();
+
+        int basePort = options.getInt( "basePort" );
+        // the selector never matches, so only the simulated port range is polled and local JVMs found via attach are ignored
+        Map<String, Object> instance = ImmutableMap.<String, Object>builder()
+          .put( "jvmSelector", "false" )
+          .put( "jvmNameExtractor", "'sim-' + #port" )
+          .put( "jmxPortRange", basePort + "-" + (basePort + options.getInt( "jvms" ) - 1) )
+          .put( "tags", ImmutableList.of( "jvm-type:simulated" ) )
+          .put( "metricSetRefs", ImmutableList.of( metrics.getName() ) )
+          .build();
+        File config = new File( directory, "fleet-config.json" );
+        objectMapper.writeValue( config, ImmutableList.of( instance ) );
+        config.deleteOnExit();
+        return config;
+    }
+
+    private static final class NoArguments implements ApplicationArguments {
+        @Override
+        public String[] getSourceArgs() {
+            return new String[ 0 ];
+        }
+
+        @Override
+        public Set<String> getOptionNames() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public boolean containsOption( String name ) {
+            return false;
+        }
+
+        @Override
+        public List<String> getOptionValues( String name ) {
+            return null;
+        }
+
+        @Override
+        public List<String> getNonOptionArgs() {
+            return Collections.emptyList();
+        }
+    }
+
+    private static final class Reporter {
+        private final SimulationOptions options;
+        private final StatsdListener listener;
+        private final DogStatsdEmitter emitter;
+        private final AsyncMetricSink metricSink;
+        private final TimedPollingEngine pollingEngine;
+        private final PollScheduler pollScheduler;
+        private final MetricsMXBean collectorMetrics;
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final com.sun.management.OperatingSystemMXBean os =
+          (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        private final long startNanos = System.nanoTime();
+        private long lastNanos = startNanos;
+        private long lastCpuNanos = os.getProcessCpuTime();
+        private long lastLines;
+        private long lastGcMs = gcMs();
+        private long polls;
+        private long overruns;
+        private long maxPollMs;
+        private long peakHeapBytes;
+
+        private Reporter( SimulationOptions options, StatsdListener listener, DogStatsdEmitter emitter, AsyncMetricSink metricSink,
+          TimedPollingEngine pollingEngine, PollScheduler pollScheduler, MetricsMXBean collectorMetrics ) {
+            this.options = options;
+            this.listener = listener;
+            this.emitter = emitter;
+            this.metricSink = metricSink;
+            this.pollingEngine = pollingEngine;
+            this.pollScheduler = pollScheduler;
+            this.collectorMetrics = collectorMetrics;
+        }
+
+        private void printHeader() {
+            System.out.printf( "%8s %7s %7s %7s %7s %8s %7s %7s %10s %9s %9s %7s %7s %8s %6s %7s%n", "elapsed", "polls", "p50ms", "p99ms",
+              "maxms", "overrun", "skipped", "lagms", "metrics/s", "udpdrop", "sinkdrop", "queue", "limit", "heapMB", "cpu%", "gcms" );
+        }
+
+        private void report() {
+            long nowNanos = System.nanoTime();
+            double intervalSeconds = (nowNanos - lastNanos) / 1e9;
+            long[] durations = pollingEngine.drainSorted();
+            long pollRateMs = options.getLong( "pollRateMs" );
+            long intervalOverruns = 0;
+            for( long durationMs : durations ) {
+                if( durationMs > pollRateMs ) {
+                    intervalOverruns++;
+                }
+            }
+            polls += durations.length;
+            overruns += intervalOverruns;
+            long intervalMaxMs = durations.length == 0 ? 0 : durations[ durations.length - 1 ];
+            maxPollMs = Math.max( maxPollMs, intervalMaxMs );
+
+            long lines = listener.getLines();
+            long cpuNanos = os.getProcessCpuTime();
+            double cpuPercent = 100.0 * (cpuNanos - lastCpuNanos) / (nowNanos - lastNanos) / os.getAvailableProcessors();
+            long heapBytes = memory.getHeapMemoryUsage().getUsed();
+            peakHeapBytes = Math.max( peakHeapBytes, heapBytes );
+            long gcMs = gcMs();
+
+            System.out.printf( "%7ds %7d %7d %7d %7d %8d %7d %7d %10.0f %9d %9d %7d %7d %8d %6.1f %7d%n", TimeUnit.NANOSECONDS.toSeconds( nowNanos - startNanos ),
+              durations.length, percentile( durations, 0.50 ), percentile( durations, 0.99 ), intervalMaxMs, intervalOverruns,
+              collectorMetrics.getSkippedPolls(), pollScheduler.getMaxLagMs(), (lines - lastLines) / intervalSeconds, udpDropped(),
+              metricSink.getDropped(), pollingEngine.getQueueDepth(), pollingEngine.getConcurrencyLimit(), heapBytes >> 20, cpuPercent, gcMs - lastGcMs );
+
+            lastNanos = nowNanos;
+            lastCpuNanos = cpuNanos;
+            lastLines = lines;
+            lastGcMs = gcMs;
+        }
+
+        private void printSummary() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            System.out.printf( "%nTargets: %d, polls: %d, overran %dms: %d, slowest poll: %dms, skipped ticks: %d%n", options.getInt( "jvms" ), polls,
+              options.getLong( "pollRateMs" ), overruns, maxPollMs, collectorMetrics.getSkippedPolls() );
+            System.out.printf( "Metrics received: %d (%.0f/s), datagrams sent/received: %d/%d, sink drops: %d%n", listener.getLines(),
+              listener.getLines() / seconds, emitter.getPacketsSent(), listener.getPackets(), metricSink.getDropped() );
+            System.out.printf( "Peak heap: %dMB, cpu time: %.1fs%s%n", peakHeapBytes >> 20, os.getProcessCpuTime() / 1e9,
+              options.getInt( "forks" ) == 0 ? " (includes the simulated JVMs; use --forks to separate them)" : "" );
+        }
+
+        private long udpDropped() {
+            // datagrams still in flight count as dropped for an instant; over an interval that noise is negligible
+            return Math.max( 0, emitter.getPacketsSent() - listener.getPackets() );
+        }
+
+        private static long percentile( long[] sorted, double quantile ) {
+            if( sorted.length == 0 ) {
+                return 0;
+            }
+            return sorted[ Math.min( sorted.length - 1, (int) Math.ceil( quantile * sorted.length ) - 1 ) ];
+        }
+
+        private static long gcMs() {
+            long total = 0;
+            for( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() ) {
+                total += Math.max( 0, gc.getCollectionTime() );
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.jmx.loadtest;
+
+import java.io.IOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.jmx.bench.SyntheticMBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One simulated target: its own MBeanServer populated with {@link SyntheticMBean}s, exported through an RMI registry and
+ * JMXConnectorServer on a loopback port the way {@code -Dcom.sun.management.jmxremote.port} would.
+ */
+final class SimulatedJvm implements AutoCloseable {
+    static final String DOMAIN = "sim";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final int port;
+    private final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+    private final List<ObjectName> flapping = new ArrayList<>();
+    private Registry registry;
+    private JMXConnectorServer connectorServer;
+
+    SimulatedJvm( int port ) {
+        this.port = port;
+    }
+
+    void start( SimulationOptions options, boolean slow, boolean hanging, ScheduledExecutorService flapper ) throws IOException, JMException {
+        int numericAttributes = options.getInt( "numericAttributes" );
+        int compositeAttributes = options.getInt( "compositeAttributes" );
+        int mbeans = options.getInt( "mbeans" );
+        int flappingMBeans = Math.min( options.getInt( "flappingMBeans" ), mbeans );
+        for( int i = 0; i < mbeans; i++ ) {
+            long delayMs = 0;
+            String kind = "Steady";
+            if( i == 0 && hanging ) {
+                delayMs = options.getLong( "hangMs" );
+                kind = "Hanging";
+            } else if( i == 0 && slow ) {
+                delayMs = options.getLong( "slowMs" );
+                kind = "Slow";
+            } else if( i > mbeans - 1 - flappingMBeans ) {
+                kind = "Flapping";
+            }
+            ObjectName objectName = new ObjectName( DOMAIN + ":type=Synthetic,kind=" + kind + ",name=Pool" + i );
+            mbeanServer.registerMBean( new SyntheticMBean( numericAttributes, compositeAttributes, delayMs ), objectName );
+            if( kind.equals( "Flapping" ) ) {
+                flapping.add( objectName );
+            }
+        }
+        if( !flapping.isEmpty() ) {
+            long periodMs = options.getLong( "flapPeriodMs" );
+            flapper.scheduleAtFixedRate( () -> flap( numericAttributes, compositeAttributes ), periodMs, periodMs, TimeUnit.MILLISECONDS );
+        }
+
+        registry = LocateRegistry.createRegistry( port );
+        JMXServiceURL url = new JMXServiceURL( String.format( "service:jmx:rmi://127.0.0.1:%d/jndi/rmi://127.0.0.1:%d/jmxrmi", port, port ) );
+        connectorServer = JMXConnectorServerFactory.newJMXConnectorServer( url, null, mbeanServer );
+        connectorServer.start();
+    }
+
+    private void flap( int numericAttributes, int compositeAttributes ) {
+        for( ObjectName objectName : flapping ) {
+            try {
+                if( mbeanServer.isRegistered( objectName ) ) {
+                    mbeanServer.unregisterMBean( objectName );
+                } else {
+                    mbeanServer.registerMBean( new SyntheticMBean( numericAttributes, compositeAttributes ), objectName );
+                }
+            } catch( JMException e ) {
+                logger.warn( "Unable to flap {}", objectName, e );
+            }
+        }
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( connectorServer != null ) {
+            connectorServer.stop();
+        }
+        if( registry != null ) {
+            try {
+                UnicastRemoteObject.unexportObject( registry, true );
+            } catch( NoSuchObjectException e ) {
+                // already gone
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.jmx.loadtest;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * {@code --name=value} options for the fleet simulator. Every option has a default, so any subset can be given.
+ */
+final class SimulationOptions {
+    private static final Map<String, String> DEFAULTS = ImmutableMap.<String, String>builder()
+      .put( "jvms", "50" )                  // simulated JVMs, one JMXConnectorServer each
+      .put( "basePort", "42000" )           // first port of the simulated JVM range
+      .put( "forks", "0" )                  // child JVMs hosting the simulated JVMs; 0 hosts them in the collector's JVM
+      .put( "mbeans", "1000" )              // synthetic MBeans per simulated JVM
+      .put( "numericAttributes", "8" )      // long attributes per MBean
+      .put( "compositeAttributes", "1" )    // MemoryUsage-shaped attributes per MBean
+      .put( "slowJvms", "0" )               // JVMs with one MBean whose reads take slowMs
+      .put( "slowMs", "500" )
+      .put( "hangingJvms", "0" )            // JVMs with one MBean whose reads block for hangMs
+      .put( "hangMs", "600000" )
+      .put( "flappingMBeans", "0" )         // MBeans per JVM that are unregistered and re-registered every flapPeriodMs
+      .put( "flapPeriodMs", "5000" )
+      .put( "pollRateMs", "10000" )
+      .put( "requestTimeoutMs", "5000" )
+      .put( "requestWindow", "4" )          // getAttributes calls in flight at once per simulated JVM
+      .put( "pollerMode", "auto" )          // auto, platform or virtual; see jmxcollector.pollerMode
+      .put( "pollerMaxConcurrency", "64" )
+      .put( "durationSeconds", "120" )
+      .put( "reportSeconds", "10" )
+      .put( "serve", "false" )              // internal: run as a child that only hosts simulated JVMs
+      .build();
+
+    private final Map<String, String> values;
+
+    private SimulationOptions( Map<String, String> values ) {
+        this.values = values;
+    }
+
+    static SimulationOptions parse( String[] args ) {
+        Map<String, String> values = new LinkedHashMap<>( DEFAULTS );
+        for( String arg : args ) {
+            checkArgument( arg.startsWith( "--" ) && arg.contains( "=" ), "expected --name=value but got %s; options are %s", arg, DEFAULTS.keySet() );
+            String name = arg.substring( 2, arg.indexOf( '=' ) );
+            checkArgument( DEFAULTS.containsKey( name ), "unknown option %s; options are %s", name, DEFAULTS.keySet() );
+            values.put( name, arg.substring( arg.indexOf( '=' ) + 1 ) );
+        }
+        return new SimulationOptions( values );
+    }
+
+    int getInt( String name ) {
+        return Integer.parseInt( get( name ) );
+    }
+
+    long getLong( String name ) {
+        return Long.parseLong( get( name ) );
+    }
+
+    boolean getBoolean( String name ) {
+        return Boolean.parseBoolean( get( name ) );
+    }
+
+    String get( String name ) {
+        return checkNotNull( values.get( name ), "unknown option %s", name );
+    }
+
+    /**
+     * @return the arguments for a child that hosts {@code jvms} simulated JVMs starting at {@code basePort}
+     */
+    List<String> toChildArgs( int basePort, int jvms, int slowJvms, int hangingJvms ) {
+        Map<String, String> child = new LinkedHashMap<>( values );
+        child.put( "basePort", String.valueOf( basePort ) );
+        child.put( "jvms", String.valueOf( jvms ) );
+        child.put( "slowJvms", String.valueOf( slowJvms ) );
+        child.put( "hangingJvms", String.valueOf( hangingJvms ) );
+        child.put( "forks", "0" );
+        child.put( "serve", "true" );
+        List<String> args = new ArrayList<>();
+        for( Map.Entry<String, String> entry : child.entrySet() ) {
+            args.add( "--" + entry.getKey() + "=" + entry.getValue() );
+        }
+        return args;
+    }
+
+    @Override
+    public String toString() {
+        return Joiner.on( ' ' ).withKeyValueSeparator( "=" ).join( values );
+    }
+}
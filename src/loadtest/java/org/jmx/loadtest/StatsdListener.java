@@ -0,0 +1,69 @@
+package org.jmx.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the dogstatsd agent: counts datagrams and the metric lines in them, nothing else. Comparing the packet count with
+ * what the collector reports as sent gives the number of datagrams the kernel dropped on the way.
+ */
+final class StatsdListener implements AutoCloseable {
+    private final DatagramChannel channel;
+    private final Thread thread;
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+
+    StatsdListener() throws IOException {
+        channel = DatagramChannel.open();
+        channel.setOption( StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024 );
+        channel.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+        thread = new Thread( this::receive, "statsd-listener" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 65536 );
+        try {
+            while( true ) {
+                buffer.clear();
+                channel.receive( buffer );
+                buffer.flip();
+                long count = buffer.hasRemaining() ? 1 : 0;
+                for( int i = buffer.position(); i < buffer.limit(); i++ ) {
+                    if( buffer.get( i ) == '\n' ) {
+                        count++;
+                    }
+                }
+                packets.incrementAndGet();
+                lines.addAndGet( count );
+            }
+        } catch( ClosedChannelException e ) {
+            // closed by close()
+        } catch( IOException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    long getPackets() {
+        return packets.get();
+    }
+
+    long getLines() {
+        return lines.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
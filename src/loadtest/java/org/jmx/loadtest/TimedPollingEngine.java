@@ -0,0 +1,47 @@
+package org.jmx.loadtest;
+
+import java.util.Arrays;
+
+import org.jmx.PollingEngine;
+
+/**
+ * The collector's polling engine with a stopwatch around each task. The poll scheduler submits exactly one task per target poll,
+ * so the recorded durations are per-target poll latencies.
+ */
+final class TimedPollingEngine extends PollingEngine {
+    private long[] durationsMs = new long[ 1024 ];
+    private int count;
+
+    TimedPollingEngine( Mode mode, int queueCapacity, int minConcurrency, int maxConcurrency ) {
+        super( mode, queueCapacity, minConcurrency, maxConcurrency );
+    }
+
+    @Override
+    public boolean submit( Object target, Runnable task ) {
+        return super.submit( target, () -> {
+            long startNanos = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                record( (System.nanoTime() - startNanos) / 1_000_000 );
+            }
+        } );
+    }
+
+    private synchronized void record( long durationMs ) {
+        if( count == durationsMs.length ) {
+            durationsMs = Arrays.copyOf( durationsMs, count * 2 );
+        }
+        durationsMs[ count++ ] = durationMs;
+    }
+
+    /**
+     * @return the poll durations recorded since the previous call, sorted ascending
+     */
+    synchronized long[] drainSorted() {
+        long[] drained = Arrays.copyOf( durationsMs, count );
+        count = 0;
+        Arrays.sort( drained );
+        return drained;
+    }
+}
@@ -0,0 +1,101 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.openmbean.CompositeData;
+
+import org.jmx.sink.MetricKind;
+import org.jmx.sink.MetricSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns the attribute values returned for one fetch plan entry into samples: unpacks composite values, converts cumulative
+ * counters into deltas or rates and hands the result to the metric sink.
+ */
+final class AttributeProcessor {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final CounterStateStore counterState;
+    private final MetricSink metricSink;
+    private final MetricsMXBean collectorMetrics;
+
+    AttributeProcessor( CounterStateStore counterState, MetricSink metricSink, MetricsMXBean collectorMetrics ) {
+        this.counterState = checkNotNull( counterState, "counterState is required" );
+        this.metricSink = checkNotNull( metricSink, "metricSink is required" );
+        this.collectorMetrics = checkNotNull( collectorMetrics, "collectorMetrics is required" );
+    }
+
+    /**
+     * @return the number of metrics read from the attribute, in the same unit as a {@link PerfDataPoller} poll
+     */
+    int processAttribute( FetchPlan.Entry entry, Attribute attr, long sampledAtMs ) {
+        List<PlannedMetric> metrics = entry.findMetricsFor( attr.getName() );
+        Object value = attr.getValue();
+        int processed = 0;
+        if( value instanceof CompositeData ) {
+            CompositeData data = (CompositeData) value;
+            // pull out each metric from composite object
+            for( PlannedMetric metric : metrics ) {
+                if( sendMetric( metric, data.get( metric.getAttribute().getNestedName() ), sampledAtMs ) ) {
+                    processed++;
+                }
+            }
+        } else {
+            if( value instanceof Number ) {
+                for( PlannedMetric metric : metrics ) {
+                    if( sendMetric( metric, value, sampledAtMs ) ) {
+                        processed++;
+                    }
+                }
+            } else {
+                throw new RuntimeException( "Unknown attribute type: " + value.getClass() );
+            }
+        }
+        return processed;
+    }
+
+    private boolean sendMetric( PlannedMetric metric, Object value, long sampledAtMs ) {
+        if( !(value instanceof Number) ) {
+            logger.warn( "Skipping unknown metric type {}", value == null ? null : value.getClass() );
+            return false;
+        }
+        processValue( metric, ((Number) value).doubleValue(), sampledAtMs );
+        return true;
+    }
+
+    /**
+     * Handles a value read for {@code metric} by other means than an MBean attribute, e.g. from a performance data counter.
+     */
+    void processValue( PlannedMetric metric, double v, long sampledAtMs ) {
+        collectorMetrics.incrementMetricsCollected();
+        switch( metric.getAttribute().getType() ) {
+            case COUNTER: {
+                // JMX counters are cumulative; statsd counts are increments
+                double delta = counterState.delta( metric.getSeries().getId(), v, sampledAtMs );
+                if( Double.isNaN( delta ) ) {
+                    return;
+                }
+                metricSink.write( metric.getSeries(), MetricKind.COUNT, delta, sampledAtMs );
+                break;
+            }
+            case RATE: {
+                double rate = counterState.rate( metric.getSeries().getId(), v, sampledAtMs );
+                if( Double.isNaN( rate ) ) {
+                    return;
+                }
+                metricSink.write( metric.getSeries(), MetricKind.GAUGE, rate, sampledAtMs );
+                break;
+            }
+            default:
+                metricSink.write( metric.getSeries(), MetricKind.GAUGE, v, sampledAtMs );
+                break;
+        }
+
+        if( logger.isDebugEnabled() ) {
+            logger.debug( "{} = {}", metric.getAlias(), v );
+        }
+    }
+}
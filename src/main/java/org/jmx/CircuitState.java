@@ -0,0 +1,5 @@
+package org.jmx;
+
+public enum CircuitState {
+    CLOSED, OPEN, HALF_OPEN, EXCLUDED
+}
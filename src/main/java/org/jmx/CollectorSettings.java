@@ -0,0 +1,48 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * How the collector polls: how often, where core metrics come from, how many requests it keeps in flight per JVM and whether it
+ * follows changes to its configuration.
+ */
+public final class CollectorSettings {
+    private final int rateMs;
+    private final CoreMetricsSource coreMetricsSource;
+    // getAttributes calls in flight at once for one JVM
+    private final int requestWindow;
+    private final boolean watchConfiguration;
+
+    public CollectorSettings( int rateMs, CoreMetricsSource coreMetricsSource, int requestWindow, boolean watchConfiguration ) {
+        checkArgument( rateMs > 0, "rateMs must be > 0: %s", rateMs );
+        this.rateMs = rateMs;
+        this.coreMetricsSource = checkNotNull( coreMetricsSource, "coreMetricsSource is required" );
+        checkArgument( requestWindow > 0, "requestWindow must be > 0: %s", requestWindow );
+        this.requestWindow = requestWindow;
+        this.watchConfiguration = watchConfiguration;
+    }
+
+    public int getRateMs() {
+        return rateMs;
+    }
+
+    public CoreMetricsSource getCoreMetricsSource() {
+        return coreMetricsSource;
+    }
+
+    public int getRequestWindow() {
+        return requestWindow;
+    }
+
+    public boolean isWatchConfiguration() {
+        return watchConfiguration;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "rateMs", rateMs ).add( "coreMetricsSource", coreMetricsSource ).add( "requestWindow",
+          requestWindow ).add( "watchConfiguration", watchConfiguration ).toString();
+    }
+}
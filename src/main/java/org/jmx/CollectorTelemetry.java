@@ -0,0 +1,172 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.jmx.connection.JmxConnectionCache;
+import org.jmx.sink.AsyncMetricSink;
+import org.jmx.sink.MetricKind;
+import org.jmx.sink.MetricSeries;
+import org.jmx.sink.TagSet;
+import org.jmx.statsd.DogStatsdEmitter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.TaskScheduler;
+
+import com.google.common.base.Splitter;
+
+/**
+ * The collector's own health: gauges for the pipeline stages that can back up, published over JMX, and every
+ * {@code rateMs} a report of those gauges, the {@link MetricsMXBean} counters and the latency histograms over the last interval,
+ * emitted under {@code jmx_collector.} so the collector shows up next to the JVMs it monitors.
+ */
+@ManagedResource
+public class CollectorTelemetry {
+    private static final String PREFIX = "jmx_collector.";
+    private static final TagSet TAGS = new TagSet( "jvm-type:jmx-collector" );
+    private static final double[] QUANTILES = { 0.50, 0.90, 0.99 };
+
+    private final MetricsMXBean collectorMetrics;
+    private final PollingEngine pollingEngine;
+    private final JmxConnectionCache connectionCache;
+    private final AsyncMetricSink asyncSink;
+    private final DogStatsdEmitter statsdEmitter;
+    private final TaskScheduler taskScheduler;
+    private final int rateMs;
+    // everything below is only touched by the scheduled report
+    private final Map<String, MetricSeries> series = new HashMap<>();
+    private final Map<String, Long> previousCounts = new HashMap<>();
+    private final Map<LatencyHistogram, LatencyHistogram.Snapshot> previousSnapshots = new HashMap<>();
+    private final Map<String, LatencyHistogram.Snapshot> previousTargetSnapshots = new HashMap<>();
+    private ScheduledFuture<?> schedule;
+
+    public CollectorTelemetry( MetricsMXBean collectorMetrics, PollingEngine pollingEngine, JmxConnectionCache connectionCache,
+      AsyncMetricSink asyncSink, DogStatsdEmitter statsdEmitter, TaskScheduler taskScheduler, int rateMs ) {
+        this.collectorMetrics = checkNotNull( collectorMetrics, "collectorMetrics is required" );
+        this.pollingEngine = checkNotNull( pollingEngine, "pollingEngine is required" );
+        this.connectionCache = checkNotNull( connectionCache, "connectionCache is required" );
+        this.asyncSink = checkNotNull( asyncSink, "asyncSink is required" );
+        this.statsdEmitter = checkNotNull( statsdEmitter, "statsdEmitter is required" );
+        this.taskScheduler = checkNotNull( taskScheduler, "taskScheduler is required" );
+        checkArgument( rateMs > 0, "rateMs must be > 0: %s", rateMs );
+        this.rateMs = rateMs;
+    }
+
+    public void start() {
+        schedule = taskScheduler.scheduleAtFixedRate( this::report, rateMs );
+    }
+
+    public void stop() {
+        if( schedule != null ) {
+            schedule.cancel( false );
+        }
+    }
+
+    @ManagedAttribute
+    public int getExecutorQueueDepth() {
+        return pollingEngine.getQueueDepth();
+    }
+
+    @ManagedAttribute
+    public int getExecutorActiveTasks() {
+        return pollingEngine.getActiveTasks();
+    }
+
+    @ManagedAttribute
+    public long getActiveConnections() {
+        return connectionCache.size();
+    }
+
+    @ManagedAttribute
+    public long getBlacklistedTargets() {
+        return collectorMetrics.getOpenCircuits() + collectorMetrics.getExcludedTargets();
+    }
+
+    /**
+     * @return samples lost because the sink queue was full, plus lines the statsd emitter could not send
+     */
+    @ManagedAttribute
+    public long getStatsdDrops() {
+        return asyncSink.getDropped() + statsdEmitter.getLinesDropped();
+    }
+
+    void report() {
+        long nowMs = System.currentTimeMillis();
+        gauge( "executor.queue_depth", getExecutorQueueDepth(), nowMs );
+        gauge( "executor.active_tasks", getExecutorActiveTasks(), nowMs );
+        gauge( "executor.concurrency_limit", pollingEngine.getConcurrencyLimit(), nowMs );
+        gauge( "connections.active", getActiveConnections(), nowMs );
+        gauge( "targets.blacklisted", getBlacklistedTargets(), nowMs );
+        gauge( "targets.half_open", collectorMetrics.getHalfOpenCircuits(), nowMs );
+        gauge( "sink.queue_depth", asyncSink.getQueueDepth(), nowMs );
+
+        count( "metrics_collected", collectorMetrics.getMetricsCollected(), nowMs );
+        count( "server_polls", collectorMetrics.getServerPolls(), nowMs );
+        count( "skipped_polls", collectorMetrics.getSkippedPolls(), nowMs );
+        count( "rejected_polls", pollingEngine.getRejectedTasks(), nowMs );
+        count( "circuit_trips", collectorMetrics.getCircuitTrips(), nowMs );
+        count( "circuit_recoveries", collectorMetrics.getCircuitRecoveries(), nowMs );
+        count( "statsd.drops", getStatsdDrops(), nowMs );
+        count( "statsd.packets", statsdEmitter.getPacketsSent(), nowMs );
+
+        histogram( "connect", collectorMetrics.getConnectHistogram(), nowMs );
+        histogram( "query_names", collectorMetrics.getQueryNamesHistogram(), nowMs );
+        histogram( "get_attributes", collectorMetrics.getGetAttributesHistogram(), nowMs );
+        histogram( "poll_cycle", collectorMetrics.getPollCycleHistogram(), nowMs );
+        reportTargets( nowMs );
+        asyncSink.flush();
+    }
+
+    private void reportTargets( long nowMs ) {
+        Map<String, LatencyHistogram> targets = collectorMetrics.getTargetHistograms();
+        // targets whose histograms aged out no longer need a baseline
+        previousTargetSnapshots.keySet().retainAll( targets.keySet() );
+        for( Map.Entry<String, LatencyHistogram> entry : targets.entrySet() ) {
+            LatencyHistogram.Snapshot current = entry.getValue().snapshot();
+            LatencyHistogram.Snapshot previous = previousTargetSnapshots.put( entry.getKey(), current );
+            LatencyHistogram.Snapshot interval = current.since( previous == null ? LatencyHistogram.Snapshot.EMPTY : previous );
+            if( interval.getCount() == 0 ) {
+                continue;
+            }
+            TagSet tags = new TagSet( Splitter.on( ',' ).omitEmptyStrings().splitToList( entry.getKey() ).toArray( new String[ 0 ] ) );
+            asyncSink.write( new MetricSeries( PREFIX + "target.get_attributes.p99_ms", tags ), MetricKind.GAUGE, interval.getPercentileMs( 0.99 ), nowMs );
+            asyncSink.write( new MetricSeries( PREFIX + "target.get_attributes.max_ms", tags ), MetricKind.GAUGE, interval.getMaxMs(), nowMs );
+        }
+    }
+
+    private void histogram( String name, LatencyHistogram histogram, long nowMs ) {
+        LatencyHistogram.Snapshot interval = interval( histogram );
+        asyncSink.write( seriesFor( name + ".count" ), MetricKind.COUNT, interval.getCount(), nowMs );
+        if( interval.getCount() == 0 ) {
+            return;
+        }
+        asyncSink.write( seriesFor( name + ".mean_ms" ), MetricKind.GAUGE, interval.getMeanMs(), nowMs );
+        for( double quantile : QUANTILES ) {
+            asyncSink.write( seriesFor( name + ".p" + Math.round( quantile * 100 ) + "_ms" ), MetricKind.GAUGE, interval.getPercentileMs( quantile ),
+              nowMs );
+        }
+        asyncSink.write( seriesFor( name + ".max_ms" ), MetricKind.GAUGE, interval.getMaxMs(), nowMs );
+    }
+
+    private LatencyHistogram.Snapshot interval( LatencyHistogram histogram ) {
+        LatencyHistogram.Snapshot current = histogram.snapshot();
+        LatencyHistogram.Snapshot previous = previousSnapshots.put( histogram, current );
+        return current.since( previous == null ? LatencyHistogram.Snapshot.EMPTY : previous );
+    }
+
+    private void gauge( String name, double value, long nowMs ) {
+        asyncSink.write( seriesFor( name ), MetricKind.GAUGE, value, nowMs );
+    }
+
+    private void count( String name, long total, long nowMs ) {
+        Long previous = previousCounts.put( name, total );
+        asyncSink.write( seriesFor( name ), MetricKind.COUNT, total - (previous == null ? 0 : previous), nowMs );
+    }
+
+    private MetricSeries seriesFor( String name ) {
+        return series.computeIfAbsent( name, key -> new MetricSeries( PREFIX + key, TAGS ) );
+    }
+}
@@ -0,0 +1,16 @@
+package org.jmx;
+
+/**
+ * Where the metrics of the built-in core JVM metric set are read from.
+ */
+public enum CoreMetricsSource {
+    /**
+     * Over JMX, together with the rest of the metric set.
+     */
+    JMX,
+    /**
+     * From the performance data file of JVMs on this host, falling back to JMX for JVMs that publish none; only the remaining
+     * metric set is read over JMX.
+     */
+    PERFDATA
+}
@@ -0,0 +1,183 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Remembers the previous sample of every cumulative series so that counters can be reported as deltas or per-second rates.
+ * Series are keyed by a 64-bit id and stored in striped open-addressing tables of primitive arrays, so the per-series cost is a
+ * few dozen bytes and lookups never allocate.
+ */
+public final class CounterStateStore {
+    private static final long EMPTY = 0L;
+    // substituted for a genuine id of 0, which would otherwise collide with the empty-slot marker
+    private static final long ZERO_ID = 0x9E3779B97F4A7C15L;
+
+    private final Segment[] segments;
+    private final long expireAfterMs;
+
+    public CounterStateStore( int concurrency, long expireAfterMs ) {
+        checkArgument( concurrency > 0, "concurrency must be > 0: %s", concurrency );
+        checkArgument( expireAfterMs > 0, "expireAfterMs must be > 0: %s", expireAfterMs );
+        int segmentCount = Integer.highestOneBit( concurrency - 1 ) << 1;
+        this.segments = new Segment[ Math.max( 1, segmentCount ) ];
+        for( int i = 0; i < segments.length; i++ ) {
+            segments[ i ] = new Segment();
+        }
+        this.expireAfterMs = expireAfterMs;
+    }
+
+    /**
+     * @return the increase since the previous sample, or NaN for the first sample of a series and after a reset
+     */
+    public double delta( long seriesId, double value, long timestampMs ) {
+        return segmentFor( seriesId ).update( normalize( seriesId ), value, timestampMs, false );
+    }
+
+    /**
+     * @return the per-second increase since the previous sample, or NaN for the first sample of a series and after a reset
+     */
+    public double rate( long seriesId, double value, long timestampMs ) {
+        return segmentFor( seriesId ).update( normalize( seriesId ), value, timestampMs, true );
+    }
+
+    /**
+     * Drops series that have not been sampled within the expiry window, e.g. because their JVM went away.
+     */
+    public void expire( long nowMs ) {
+        for( Segment segment : segments ) {
+            segment.expire( nowMs - expireAfterMs );
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for( Segment segment : segments ) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor( long seriesId ) {
+        return segments[ (int) (seriesId >>> 32) & (segments.length - 1) ];
+    }
+
+    private static long normalize( long seriesId ) {
+        return seriesId == EMPTY ? ZERO_ID : seriesId;
+    }
+
+    private static int slot( long key, int mask ) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static final class Segment {
+        private long[] keys = new long[ 64 ];
+        private double[] values = new double[ 64 ];
+        private long[] timestamps = new long[ 64 ];
+        private int size;
+
+        private synchronized double update( long key, double value, long timestampMs, boolean perSecond ) {
+            int mask = keys.length - 1;
+            int i = slot( key, mask );
+            while( keys[ i ] != EMPTY && keys[ i ] != key ) {
+                i = (i + 1) & mask;
+            }
+
+            if( keys[ i ] == EMPTY ) {
+                keys[ i ] = key;
+                values[ i ] = value;
+                timestamps[ i ] = timestampMs;
+                if( ++size * 2 > keys.length ) {
+                    rehash( keys.length * 2 );
+                }
+                return Double.NaN;
+            }
+
+            double previousValue = values[ i ];
+            long previousTimestampMs = timestamps[ i ];
+            values[ i ] = value;
+            timestamps[ i ] = timestampMs;
+
+            if( value < previousValue || timestampMs <= previousTimestampMs ) {
+                // counter went backwards (JVM restart, wrap, MBean re-registered) or clock skew; start over from this sample
+                return Double.NaN;
+            }
+            double delta = value - previousValue;
+            return perSecond ? delta * 1000.0 / (timestampMs - previousTimestampMs) : delta;
+        }
+
+        private synchronized void expire( long staleBeforeMs ) {
+            int i = 0;
+            while( i < keys.length ) {
+                if( keys[ i ] != EMPTY && timestamps[ i ] < staleBeforeMs ) {
+                    // the slot is refilled from further along its cluster, so look at it again
+                    delete( i );
+                } else {
+                    i++;
+                }
+            }
+            int capacity = keys.length;
+            while( capacity > 64 && size * 8 < capacity ) {
+                capacity /= 2;
+            }
+            if( capacity < keys.length ) {
+                rehash( capacity );
+            }
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Empties slot {@code hole} and moves later entries of its cluster back, so that no probe sequence is broken and no
+         * tombstone is needed.
+         */
+        private void delete( int hole ) {
+            int mask = keys.length - 1;
+            int j = hole;
+            while( true ) {
+                j = (j + 1) & mask;
+                if( keys[ j ] == EMPTY ) {
+                    break;
+                }
+                int home = slot( keys[ j ], mask );
+                // the entry may only move back if its home slot is not cyclically within (hole, j]
+                boolean movable = hole <= j ? home <= hole || home > j : home <= hole && home > j;
+                if( movable ) {
+                    keys[ hole ] = keys[ j ];
+                    values[ hole ] = values[ j ];
+                    timestamps[ hole ] = timestamps[ j ];
+                    hole = j;
+                }
+            }
+            keys[ hole ] = EMPTY;
+            size--;
+        }
+
+        private void rehash( int capacity ) {
+            long[] oldKeys = keys;
+            double[] oldValues = values;
+            long[] oldTimestamps = timestamps;
+            keys = new long[ capacity ];
+            values = new double[ capacity ];
+            timestamps = new long[ capacity ];
+            size = 0;
+
+            int mask = capacity - 1;
+            for( int j = 0; j < oldKeys.length; j++ ) {
+                if( oldKeys[ j ] == EMPTY ) {
+                    continue;
+                }
+                int i = slot( oldKeys[ j ], mask );
+                while( keys[ i ] != EMPTY ) {
+                    i = (i + 1) & mask;
+                }
+                keys[ i ] = oldKeys[ j ];
+                values[ i ] = oldValues[ j ];
+                timestamps[ i ] = oldTimestamps[ j ];
+                size++;
+            }
+        }
+    }
+}
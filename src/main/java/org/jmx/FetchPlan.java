@@ -0,0 +1,123 @@
+package org.jmx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.management.ObjectName;
+
+import org.jmx.config.JmxAttribute;
+import org.jmx.config.MetricQuery;
+import org.jmx.connection.ConnectionMetaData;
+import org.jmx.connection.JmxConnection;
+import org.jmx.sink.TagSet;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+
+/**
+ * The attribute reads needed to satisfy a connection's whole metric set: one entry per concrete ObjectName carrying the union of
+ * the attribute names every matching {@link MetricQuery} asked for, so each MBean costs a single getAttributes round trip.
+ */
+final class FetchPlan {
+    private final List<MetricQuery> metricSet;
+    private final ConnectionMetaData connectionMetaData;
+    private final long queryGeneration;
+    private final List<Entry> entries;
+
+    private FetchPlan( List<MetricQuery> metricSet, ConnectionMetaData connectionMetaData, long queryGeneration, List<Entry> entries ) {
+        this.metricSet = metricSet;
+        this.connectionMetaData = connectionMetaData;
+        this.queryGeneration = queryGeneration;
+        this.entries = entries;
+    }
+
+    static FetchPlan build( JmxConnection connection, List<MetricQuery> metricSet ) throws IOException {
+        long queryGeneration = connection.getQueryGeneration();
+        ConnectionMetaData connectionMetaData = connection.getConnectionMetaData();
+        Map<ObjectName, ListMultimap<String, JmxAttribute>> merged = new LinkedHashMap<>();
+        for( MetricQuery metricQuery : metricSet ) {
+            for( ObjectName objectName : connection.queryNames( metricQuery.getPattern() ) ) {
+                ListMultimap<String, JmxAttribute> attributes = merged.get( objectName );
+                if( attributes == null ) {
+                    attributes = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+                    merged.put( objectName, attributes );
+                }
+                for( String attributeName : metricQuery.getUniqueAttributeNames() ) {
+                    for( JmxAttribute jmxAttribute : metricQuery.findAttributesFor( attributeName ) ) {
+                        if( !containsEquivalent( attributes.get( attributeName ), jmxAttribute ) ) {
+                            attributes.put( attributeName, jmxAttribute );
+                        }
+                    }
+                }
+            }
+        }
+
+        TagSet tags = new TagSet( connectionMetaData.getJvmInstanceTags() );
+        List<Entry> entries = new ArrayList<>( merged.size() );
+        for( Map.Entry<ObjectName, ListMultimap<String, JmxAttribute>> entry : merged.entrySet() ) {
+            entries.add( new Entry( entry.getKey(), entry.getValue(), tags ) );
+        }
+        return new FetchPlan( metricSet, connectionMetaData, queryGeneration, ImmutableList.copyOf( entries ) );
+    }
+
+    private static boolean containsEquivalent( Collection<JmxAttribute> existing, JmxAttribute candidate ) {
+        // the same metric requested by overlapping metric sets must only be emitted once
+        for( JmxAttribute jmxAttribute : existing ) {
+            if( Objects.equals( jmxAttribute.getNestedName(), candidate.getNestedName() ) && Objects.equals( jmxAttribute.getAlias(), candidate.getAlias() )
+              && jmxAttribute.getType() == candidate.getType() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isCurrent( JmxConnection connection, List<MetricQuery> metricSet ) {
+        // the metadata is replaced when a configuration reload changes this JVM's tags or metric set
+        return this.metricSet == metricSet && connectionMetaData == connection.getConnectionMetaData() && queryGeneration == connection.getQueryGeneration();
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    static final class Entry {
+        private final ObjectName objectName;
+        private final ImmutableListMultimap<String, PlannedMetric> metricsByName;
+        private final String[] attributeNames;
+
+        private Entry( ObjectName objectName, ListMultimap<String, JmxAttribute> attributesByName, TagSet tags ) {
+            this.objectName = objectName;
+            ImmutableListMultimap.Builder<String, PlannedMetric> metricsByName = ImmutableListMultimap.builder();
+            for( Map.Entry<String, JmxAttribute> entry : attributesByName.entries() ) {
+                metricsByName.put( entry.getKey(), new PlannedMetric( entry.getValue(), objectName, tags ) );
+            }
+            this.metricsByName = metricsByName.build();
+            this.attributeNames = this.metricsByName.keySet().toArray( new String[ this.metricsByName.keySet().size() ] );
+        }
+
+        ObjectName getObjectName() {
+            return objectName;
+        }
+
+        String[] getAttributeNames() {
+            return attributeNames;
+        }
+
+        List<PlannedMetric> findMetricsFor( String attributeName ) {
+            return metricsByName.get( attributeName );
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper( this ).add( "objectName", objectName ).add( "attributes", metricsByName.keySet() ).toString();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.jmx.connection.AttachApiConnector;
+import org.jmx.connection.ConnectionTimeouts;
+import org.jmx.connection.JmxConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+/**
+ * Implements {@code list --history}: asks the collectors running on this host for the recent samples they keep, through the
+ * {@code queryHistory} operation of their {@link MetricsMXBean}, and prints each series as a JSON line with its name, tags,
+ * kind, and timestamps and values. A collector is recognized by its command line, or picked by pid.
+ */
+final class HistoryLister {
+    private static final ObjectName METRICS_MBEANS = objectName( "*:type=MetricsMXBean,*" );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ConnectionTimeouts connectionTimeouts;
+    private final ObjectMapper objectMapper;
+    private final PrintStream out;
+
+    HistoryLister( ConnectionTimeouts connectionTimeouts, ObjectMapper objectMapper, PrintStream out ) {
+        this.connectionTimeouts = checkNotNull( connectionTimeouts, "connectionTimeouts is required" );
+        this.objectMapper = checkNotNull( objectMapper, "objectMapper is required" );
+        this.out = checkNotNull( out, "out is required" );
+    }
+
+    /**
+     * @param collectorPid the collector to ask, or null for every collector found
+     */
+    void list( String collectorPid, String namePattern, int minutes ) throws Exception {
+        String ownPid = ManagementFactory.getRuntimeMXBean().getName().split( "@" )[ 0 ];
+        int collectors = 0;
+        for( VirtualMachineDescriptor descriptor : VirtualMachine.list() ) {
+            boolean selected = collectorPid == null
+              ? !descriptor.id().equals( ownPid ) && (descriptor.displayName().contains( "jmx-collector" )
+              || descriptor.displayName().contains( JmxCollectorMain.class.getName() ))
+              : descriptor.id().equals( collectorPid );
+            if( selected ) {
+                list( new AttachApiConnector( descriptor, Collections.emptyList() ), namePattern, minutes );
+                collectors++;
+            }
+        }
+        if( collectors == 0 ) {
+            logger.warn( "No running collector found{}", collectorPid == null ? "" : " with pid " + collectorPid );
+        }
+        out.flush();
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void list( AttachApiConnector connector, String namePattern, int minutes ) throws Exception {
+        try( JmxConnection connection = connector.connect( connectionTimeouts ) ) {
+            MBeanServerConnection mbeanServerConnection = connection.getMbeanServerConnection();
+            for( ObjectName objectName : connection.queryNames( METRICS_MBEANS ) ) {
+                List<Map<String, Object>> series = connectionTimeouts.call( () -> (List<Map<String, Object>>) mbeanServerConnection.invoke( objectName,
+                  "queryHistory", new Object[] { namePattern, minutes }, new String[] { String.class.getName(), int.class.getName() } ),
+                  connectionTimeouts.getRequestTimeoutMs(), "queryHistory on " + connector );
+                logger.info( "{} series from {}", series.size(), connector );
+                for( Map<String, Object> entry : series ) {
+                    out.println( objectMapper.writeValueAsString( entry ) );
+                }
+            }
+        }
+    }
+
+    private static ObjectName objectName( String name ) {
+        try {
+            return ObjectName.getInstance( name );
+        } catch( MalformedObjectNameException e ) {
+            throw Throwables.propagate( e );
+        }
+    }
+}
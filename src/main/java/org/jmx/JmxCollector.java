@@ -2,293 +2,325 @@ package org.jmx;
 
 import static com.google.common.base.Preconditions.*;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.PrintStream;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
-import javax.management.InstanceNotFoundException;
-import javax.management.IntrospectionException;
-import javax.management.MBeanAttributeInfo;
-import javax.management.MBeanInfo;
-import javax.management.MBeanServerConnection;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
-import javax.management.openmbean.CompositeData;
-import javax.management.openmbean.CompositeDataSupport;
 
+import org.jmx.config.ConfigurationDiff;
 import org.jmx.config.ConfigurationLoader;
-import org.jmx.config.JmxAttribute;
+import org.jmx.config.ConfigurationWatcher;
 import org.jmx.config.JvmInstanceConfiguration;
 import org.jmx.config.MetricQuery;
-import org.jmx.config.MetricType;
+import org.jmx.connection.AttachApiConnector;
+import org.jmx.connection.ConnectionMetaData;
+import org.jmx.connection.ConnectionTimeouts;
 import org.jmx.connection.JmxConnection;
 import org.jmx.connection.JmxConnectionCache;
-import org.jmx.connection.UnableToAttachException;
+import org.jmx.connection.JmxTimeoutException;
+import org.jmx.connection.NonMatchingJvmException;
+import org.jmx.connection.ReconnectingException;
 import org.jmx.connection.VirtualMachineConnector;
+import org.jmx.sink.MetricSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.TaskScheduler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Stopwatch;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
-import com.sun.tools.attach.VirtualMachineDescriptor;
-import com.timgroup.statsd.StatsDClient;
 
 public final class JmxCollector implements ApplicationRunner {
+    private static final long CONFIG_QUIET_PERIOD_MS = 500;
+    private static final int LIST_THREADS = 8;
+    private static final int HISTORY_MINUTES = 15;
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
     private final TaskScheduler taskScheduler;
-    private final TaskExecutor taskExecutor;
+    private final PollScheduler pollScheduler;
     private final JmxConnectionCache jmxConnectionStateResolver;
+    private final ConnectionTimeouts connectionTimeouts;
     private final int rateMs;
-    private final StatsDClient statsDClient;
+    // getAttributes calls in flight at once for one JVM
+    private final int requestWindow;
+    private final MetricSink metricSink;
     private final ObjectMapper objectMapper;
     private final String configFile;
     private final MetricsMXBean collectorMetrics;
-
-    public JmxCollector( MetricsMXBean metricsMXBean, String configFile, TaskScheduler taskScheduler, TaskExecutor taskExecutor, int rateMs,
-      JmxConnectionCache jmxConnectionStateResolver, StatsDClient statsDClient, ObjectMapper objectMapper ) {
+    private final TargetCircuitBreaker circuitBreaker;
+    private final CounterStateStore counterState;
+    private final AttributeProcessor attributeProcessor;
+    private final boolean watchConfiguration;
+    // null when the core metrics are read over JMX
+    private final PerfDataPoller perfDataPoller;
+    // handed over by the configuration watcher and applied by the discovery task, so reconfiguration never races discovery
+    private final AtomicReference<List<JvmInstanceConfiguration>> reloadedConfiguration = new AtomicReference<>();
+    private List<JvmInstanceConfiguration> jvmInstanceConfigurations;
+
+    public JmxCollector( MetricsMXBean metricsMXBean, String configFile, TaskScheduler taskScheduler, PollScheduler pollScheduler,
+      JmxConnectionCache jmxConnectionStateResolver, ConnectionTimeouts connectionTimeouts, TargetCircuitBreaker circuitBreaker, CounterStateStore counterState,
+      MetricSink metricSink, ObjectMapper objectMapper, CollectorSettings settings ) {
         this.taskScheduler = checkNotNull( taskScheduler, "taskScheduler is required" );
-        this.taskExecutor = checkNotNull( taskExecutor, "taskExecutor is required" );
+        this.pollScheduler = checkNotNull( pollScheduler, "pollScheduler is required" );
         this.jmxConnectionStateResolver = checkNotNull( jmxConnectionStateResolver, "jmxConnectionStateResolver is required" );
-        this.statsDClient = checkNotNull( statsDClient, "statsDClient is required" );
-        checkArgument( rateMs > 0, "rateMs must be > 0: %s", rateMs );
-        this.rateMs = rateMs;
+        this.connectionTimeouts = checkNotNull( connectionTimeouts, "connectionTimeouts is required" );
+        this.circuitBreaker = checkNotNull( circuitBreaker, "circuitBreaker is required" );
+        this.counterState = checkNotNull( counterState, "counterState is required" );
+        this.metricSink = checkNotNull( metricSink, "metricSink is required" );
+        checkNotNull( settings, "settings is required" );
+        this.rateMs = settings.getRateMs();
         this.objectMapper = checkNotNull( objectMapper, "objectMapper is required" );
         this.configFile = checkNotNull( configFile, "configFile is required" );
         this.collectorMetrics = checkNotNull( metricsMXBean, "metricsMXBean is required" );
+        this.attributeProcessor = new AttributeProcessor( counterState, metricSink, collectorMetrics );
+        this.watchConfiguration = settings.isWatchConfiguration();
+        this.perfDataPoller = settings.getCoreMetricsSource() == CoreMetricsSource.PERFDATA ? new PerfDataPoller( attributeProcessor ) : null;
+        this.requestWindow = settings.getRequestWindow();
     }
 
     @Override
     public void run( ApplicationArguments args ) throws Exception {
-        System.setProperty( "sun.tools.attach.attachTimeout", "100" );
-
         logger.info( "Non-option args: {}", args.getNonOptionArgs() );
         logger.info( "Option names: {}", args.getOptionNames() );
         logger.info( "JVM home: {}", System.getProperty( "java.home" ) );
 
         ConfigurationLoader configurationLoader = new ConfigurationLoader( objectMapper );
-        List<JvmInstanceConfiguration> jvmInstanceConfigurations = configurationLoader.loadConfiguration( new FileSystemResource( configFile ) );
+        FileSystemResource primaryConfig = new FileSystemResource( configFile );
+        jvmInstanceConfigurations = configurationLoader.loadConfiguration( primaryConfig );
 
         if( args.getNonOptionArgs().contains( "list" ) ) {
             try {
-                doList( jvmInstanceConfigurations );
+                list( args );
             } catch( Throwable e ) {
                 logger.error( "Error listing JVMs", e );
             }
             System.exit( 0 );
         }
 
-        logger.info( "Starting up; polling JVMs every {}ms", rateMs );
+        logger.info( "Starting up; polling JVMs every {}ms, core metrics via {}", rateMs, perfDataPoller == null ? CoreMetricsSource.JMX
+          : CoreMetricsSource.PERFDATA );
+        JvmDiscoveryRegistry discoveryRegistry = new JvmDiscoveryRegistry( jvmInstanceConfigurations );
+        if( watchConfiguration ) {
+            new ConfigurationWatcher( configurationLoader, primaryConfig, jvmInstanceConfigurations, CONFIG_QUIET_PERIOD_MS, reloadedConfiguration::set )
+              .start();
+        }
         taskScheduler.scheduleAtFixedRate( () -> {
-            List<VirtualMachineDescriptor> descriptors = com.sun.tools.attach.VirtualMachine.list();
-            List<VirtualMachineConnector> connectors = JmxUtils.enumerateJvms( jvmInstanceConfigurations );
-            for( VirtualMachineConnector connector : connectors ) {
-                taskExecutor.execute( () -> pollMetrics( connector ) );
+            List<JvmInstanceConfiguration> reloaded = reloadedConfiguration.getAndSet( null );
+            if( reloaded != null ) {
+                reconfigure( discoveryRegistry, reloaded );
             }
+            applyDelta( discoveryRegistry.refresh() );
+            counterState.expire( System.currentTimeMillis() );
         }, rateMs );
     }
 
-    private List<String> gatherAttributes( final MBeanServerConnection mBeanServer, final ObjectName objectName )
-      throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
-        MBeanInfo info = mBeanServer.getMBeanInfo( objectName );
-        MBeanAttributeInfo[] attrInfo = info.getAttributes();
-
-        List<String> attributes = new ArrayList<>();
-        for( MBeanAttributeInfo attr : attrInfo ) {
-            try {
-                Object obj = mBeanServer.getAttribute( objectName, attr.getName() );
-                if( obj instanceof Number ) {
-                    attributes.add( String.format( "%s=%s", attr.getName(), obj ) );
-                }
-                if( obj instanceof CompositeDataSupport ) {
-
-                    CompositeDataSupport cd = (CompositeDataSupport) obj;
-                    for( String item : cd.getCompositeType().keySet() ) {
-                        Object obj1 = cd.get( item );
-                        if( obj1 instanceof Number ) {
-                            attributes.add( String.format( "%s.%s=%s", attr.getName(), item, obj1 ) );
-                        }
-                    }
-                }
-            } catch( Exception e ) {
-                attributes.add( String.format( "%s=(error: %s)", attr.getName(), e.getMessage() ) );
+    private void applyDelta( JvmDiscoveryRegistry.Delta delta ) {
+        for( VirtualMachineConnector removed : delta.getRemoved() ) {
+            pollScheduler.cancel( removed );
+            jmxConnectionStateResolver.invalidate( removed );
+            circuitBreaker.forget( removed );
+            if( perfDataPoller != null ) {
+                perfDataPoller.forget( removed );
             }
         }
+        for( VirtualMachineConnector added : delta.getAdded() ) {
+            pollScheduler.schedule( added, () -> pollMetrics( added ) );
+        }
+    }
 
-        return ImmutableList.copyOf( attributes );
+    /**
+     * Swaps in a reloaded configuration. Live connections whose JVM is still selected and named the same way are rebound to the
+     * new tags and metric set and keep their cached query results; the rest are dropped and reconnect on their next poll.
+     */
+    private void reconfigure( JvmDiscoveryRegistry discoveryRegistry, List<JvmInstanceConfiguration> reloaded ) {
+        ConfigurationDiff diff = ConfigurationDiff.compute( jvmInstanceConfigurations, reloaded );
+        if( diff.isEmpty() ) {
+            logger.info( "Reloaded configuration is unchanged" );
+            return;
+        }
+        logger.info( "Applying reloaded configuration: {}", diff );
+        jvmInstanceConfigurations = diff.getConfigurations();
+        applyDelta( discoveryRegistry.reconfigure( jvmInstanceConfigurations ) );
+
+        int rebound = 0;
+        int dropped = 0;
+        for( Map.Entry<VirtualMachineConnector, JmxConnection> entry : jmxConnectionStateResolver.asMap().entrySet() ) {
+            JvmInstanceConfiguration running = entry.getValue().getConnectionMetaData().getJvmInstanceConfiguration();
+            if( running == null ) {
+                continue;
+            }
+            JvmInstanceConfiguration replacement = diff.replacementFor( running );
+            if( replacement == null ) {
+                jmxConnectionStateResolver.invalidate( entry.getKey() );
+                circuitBreaker.forget( entry.getKey() );
+                dropped++;
+            } else if( replacement != running ) {
+                entry.getValue().rebind( replacement );
+                rebound++;
+            }
+        }
+        int readmitted = diff.hasNewSelectors() ? circuitBreaker.forgetExcluded() : 0;
+        collectorMetrics.incrementConfigurationReloads();
+        logger.info( "Rebound {} connections, dropped {}, re-admitted {} previously unmatched JVMs", rebound, dropped, readmitted );
     }
 
-    private void doList( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
-        logger.info( "Listing JVMs..." );
+    /**
+     * {@code list [--metric-set] [--threads=N] [--output=file]}: JSON Lines, or a metric set with {@code --metric-set}, to standard
+     * output or {@code file}.
+     */
+    private void list( ApplicationArguments args ) throws Exception {
+        if( args.containsOption( "history" ) ) {
+            List<String> pattern = args.getOptionValues( "history" );
+            String collectorPid = args.containsOption( "collector" ) ? args.getOptionValues( "collector" ).get( 0 ) : null;
+            int minutes = args.containsOption( "minutes" ) ? Integer.parseInt( args.getOptionValues( "minutes" ).get( 0 ) ) : HISTORY_MINUTES;
+            new HistoryLister( connectionTimeouts, objectMapper, System.out ).list( collectorPid, pattern.isEmpty() ? "*" : pattern.get( 0 ),
+              minutes );
+            return;
+        }
+        JvmLister.Format format = args.containsOption( "metric-set" ) ? JvmLister.Format.METRIC_SET : JvmLister.Format.JSON_LINES;
+        int threads = args.containsOption( "threads" ) ? Integer.parseInt( args.getOptionValues( "threads" ).get( 0 ) ) : LIST_THREADS;
         List<VirtualMachineConnector> connectors = JmxUtils.enumerateJvms( jvmInstanceConfigurations );
-        for( VirtualMachineConnector connector : connectors ) {
-            try( JmxConnection connection = connector.connect() ) {
-                logger.info( "#appArgs={}", connection.getConnectionMetaData().getAppArgs() );
-                logger.info( "#systemProps={}", connection.getConnectionMetaData().getSystemProperties() );
-                Set<ObjectName> objectNames = new TreeSet<>( connection.getMbeanServerConnection().queryNames( null, null ) );
-                for( ObjectName objectName : objectNames ) {
-                    List<String> attributes = gatherAttributes( connection.getMbeanServerConnection(), objectName );
-                    System.out.printf( "\t%s\n", objectName );
-                    for( String attribute : attributes ) {
-                        System.out.printf( "\t\t%s\n", attribute );
-                    }
-                }
-            } catch( Exception e ) {
-                logger.warn( "Unable to connect to {}", connector, e );
+        if( args.containsOption( "output" ) ) {
+            try( PrintStream out = new PrintStream( new FileOutputStream( args.getOptionValues( "output" ).get( 0 ) ), false, "UTF-8" ) ) {
+                new JvmLister( connectionTimeouts, objectMapper, out, threads ).list( connectors, format );
             }
+        } else {
+            new JvmLister( connectionTimeouts, objectMapper, System.out, threads ).list( connectors, format );
         }
     }
 
-    private final Cache<VirtualMachineConnector, Boolean> failedAttachCache = CacheBuilder.newBuilder().expireAfterWrite( 30, TimeUnit.MINUTES ).maximumSize( 2000 ).build();
-
     private void pollMetrics( VirtualMachineConnector connector ) {
+        if( !circuitBreaker.allowRequest( connector ) ) {
+            logger.debug( "Skipping due to previous failures / configuration: {}", connector );
+            return;
+        }
 
+        long startNanos = System.nanoTime();
         try {
-            if( failedAttachCache.getIfPresent( connector ) != null ) {
-                logger.debug( "Skipping due to previous failures / configuration: {}", connector );
-                return;
-            }
-
             logger.debug( "Checking connectivity to {}", connector );
-            JmxConnection connection = jmxConnectionStateResolver.lookup( connector );
+            // once a local JVM has been classified, its core metrics need no connection and the rest may need none at all
+            ConnectionMetaData connectionMetaData = perfDataPoller != null && connector instanceof AttachApiConnector
+              ? ((AttachApiConnector) connector).getConnectionMetaData() : null;
+            JmxConnection connection = null;
+            if( connectionMetaData == null ) {
+                connection = jmxConnectionStateResolver.lookup( connector );
+                connectionMetaData = connection.getConnectionMetaData();
+            }
             collectorMetrics.incrementServerPolls();
 
-            if( connection.getConnectionMetaData().getJvmInstanceConfiguration() == null ) {
-                throw new UnableToAttachException( "Not a matching JVM : " + connection );
+            JvmInstanceConfiguration jvmInstanceConfiguration = connectionMetaData.getJvmInstanceConfiguration();
+            if( jvmInstanceConfiguration == null ) {
+                throw new NonMatchingJvmException( "Not a matching JVM : " + connector );
             }
 
             Stopwatch metricPollStopwatch = Stopwatch.createStarted();
             int metricsPolled = 0;
-            for( MetricQuery metricQuery : connection.getConnectionMetaData().getJvmInstanceConfiguration().getMetricSet() ) {
-                metricsPolled += resolveMetricQuery( metricQuery, connection );
+            List<MetricQuery> metricSet = jvmInstanceConfiguration.getMetricSet();
+            if( perfDataPoller != null && connector instanceof AttachApiConnector ) {
+                int coreMetricsPolled = perfDataPoller.poll( (AttachApiConnector) connector, connectionMetaData );
+                if( coreMetricsPolled >= 0 ) {
+                    metricsPolled += coreMetricsPolled;
+                    metricSet = jvmInstanceConfiguration.getApplicationMetricSet();
+                }
+            }
+            if( !metricSet.isEmpty() ) {
+                if( connection == null ) {
+                    connection = jmxConnectionStateResolver.lookup( connector );
+                }
+                metricsPolled += fetchMetrics( fetchPlanFor( connection, metricSet ), connection );
             }
 
             metricPollStopwatch.stop();
             logger.info( "Polled {} metrics in {}ms {}", metricsPolled, metricPollStopwatch.elapsed( TimeUnit.MILLISECONDS ),
-              connection.getConnectionMetaData().getJvmInstanceTags() );
-        } catch( Exception ignored ) {
-            logger.debug( "Unable to attach to {}", connector, ignored );
-            failedAttachCache.put( connector, true );
+              connectionMetaData.getJvmInstanceTags() );
+            circuitBreaker.recordSuccess( connector );
+        } catch( NonMatchingJvmException e ) {
+            logger.debug( "Ignoring {} for its lifetime: {}", connector, e.getMessage() );
+            jmxConnectionStateResolver.invalidate( connector );
+            circuitBreaker.recordNotMatching( connector );
+        } catch( JmxTimeoutException e ) {
+            // the timed out connection is closed, and reconnected in the background
+            logger.warn( "Dropping connection to {}: {}", connector, e.getMessage() );
+            circuitBreaker.recordFailure( connector, e );
+        } catch( ReconnectingException e ) {
+            logger.debug( "Skipping {}: {}", connector, e.getMessage() );
+            circuitBreaker.recordSkipped( connector );
+        } catch( Exception e ) {
+            logger.debug( "Unable to poll {}", connector, e );
+            circuitBreaker.recordFailure( connector, e );
+        } finally {
+            metricSink.flush();
+            collectorMetrics.recordPollCycle( System.nanoTime() - startNanos );
         }
     }
 
-    private int resolveMetricQuery( MetricQuery metricQuery, JmxConnection connection ) throws IOException, ReflectionException, InstanceNotFoundException {
-        int metricsPolled = 0;
-        Set<ObjectName> matchingObjectNames = connection.queryNames( metricQuery.getPattern() );
+    private final Cache<JmxConnection, FetchPlan> fetchPlans = CacheBuilder.newBuilder().weakKeys().build();
 
-        for( ObjectName objectName : matchingObjectNames ) {
-            AttributeList list = connection.getAttributes( objectName, metricQuery.getUniqueAttributeNames() );
-            metricsPolled++;
-            for( Object attr : list ) {
-                try {
-                    processAttribute( metricQuery, objectName, (Attribute) attr, connection.getConnectionMetaData().getJvmInstanceTags() );
-                } catch( Exception e ) {
-                    logger.error( "Error processing attribute {}", attr, e );
-                }
-            }
+    private FetchPlan fetchPlanFor( JmxConnection connection, List<MetricQuery> metricSet ) throws IOException {
+        FetchPlan fetchPlan = fetchPlans.getIfPresent( connection );
+        if( fetchPlan == null || !fetchPlan.isCurrent( connection, metricSet ) ) {
+            fetchPlan = FetchPlan.build( connection, metricSet );
+            fetchPlans.put( connection, fetchPlan );
+            logger.debug( "Planned {} MBean reads for {}", fetchPlan.getEntries().size(), connection );
         }
-        return metricsPolled;
+        return fetchPlan;
     }
 
-    private void processAttribute( MetricQuery metricQuery, ObjectName objectName, Attribute attr, String[] tags ) {
-        Collection<JmxAttribute> jmxAttributes = metricQuery.findAttributesFor( attr.getName() );
-        Object value = attr.getValue();
-        if( value instanceof CompositeData ) {
-            CompositeData data = (CompositeData) value;
-            // pull out each metric from composite object
-            for( JmxAttribute jmxAttribute : jmxAttributes ) {
-                sendMetric( jmxAttribute, objectName, data.get( jmxAttribute.getNestedName() ), tags );
-            }
-        } else {
-            if( value instanceof Number ) {
-                JmxAttribute jmxAttribute = Iterables.getFirst( jmxAttributes, null );
-                sendMetric( jmxAttribute, objectName, attr.getValue(), tags );
-            } else {
-                throw new RuntimeException( "Unknown attribute type: " + value.getClass() );
-            }
-        }
-        collectorMetrics.getMetricsCollected();
+    private int fetchMetrics( FetchPlan fetchPlan, JmxConnection connection ) throws IOException, ReflectionException {
+        FetchedEntries fetched = new FetchedEntries( connection );
+        connection.getAttributes( fetchPlan.getEntries(), requestWindow, fetched );
+        return fetched.metricsPolled;
     }
 
-    private void sendMetric( JmxAttribute jmxAttribute, ObjectName objectName, Object value, String... tags ) {
-        String alias = resolveAlias( jmxAttribute, objectName );
+    /**
+     * Processes each entry of a fetch plan as its getAttributes call completes.
+     */
+    private final class FetchedEntries implements JmxConnection.AttributeRequests<FetchPlan.Entry> {
+        private final JmxConnection connection;
+        private int metricsPolled;
 
-        Double v = null;
-        if( value instanceof Number ) {
-            v = ((Number) value).doubleValue();
-        } else {
-            logger.warn( "Skipping unknown metric type {}", value.getClass() );
-            return;
+        private FetchedEntries( JmxConnection connection ) {
+            this.connection = connection;
         }
 
-        if( jmxAttribute.getType() == MetricType.GAUGE ) {
-            statsDClient.gauge( alias, v, tags );
-        } else {
-            statsDClient.count( alias, v.longValue(), tags );
+        @Override
+        public ObjectName objectName( FetchPlan.Entry entry ) {
+            return entry.getObjectName();
         }
 
-        logger.debug( "{} -> {}={} {}", objectName, alias, value, tags );
-    }
-
-    private static final Pattern ALIAS_PATTERN = Pattern.compile( "#\\{(.*?)\\}" );
-
-    private Cache<String, String> resolvedAliasCache = CacheBuilder.newBuilder().maximumSize( 1000 ).build();
-
-    private String resolveAlias( JmxAttribute jmxAttribute, ObjectName objectName ) {
-
-        String key = jmxAttribute.getAlias() + objectName + jmxAttribute.getName() + jmxAttribute.getNestedName();
-        String resolvedAlias = resolvedAliasCache.getIfPresent( key );
-        if( resolvedAlias == null ) {
-            Matcher m = ALIAS_PATTERN.matcher( jmxAttribute.getAlias() );
-
-            StringBuffer sb = new StringBuffer( jmxAttribute.getAlias().length() + 10 );
-            while( m.find() ) {
-                switch( m.group( 1 ) ) {
-                    case "name":
-                    case "type": {
-                        String replacement = objectName.getKeyProperty( m.group( 1 ) );
-                        replacement = replacement.replaceAll( "[^a-zA-Z0-9]", "_" );
-
-                        replacement = replacement.replaceAll( "([a-z])([A-Z])", "$1_$2" );
-                        m.appendReplacement( sb, replacement.toLowerCase() );
+        @Override
+        public String[] attributeNames( FetchPlan.Entry entry ) {
+            return entry.getAttributeNames();
+        }
 
-                        break;
-                    }
-                    case "attr": {
-                        String replacement = jmxAttribute.getName();
-                        if( jmxAttribute.getNestedName() != null ) {
-                            replacement = String.format( "%s.%s", replacement, jmxAttribute.getNestedName() );
-                        }
-                        replacement = replacement.replaceAll( "([a-z])([A-Z])", "$1_$2" );
-                        m.appendReplacement( sb, replacement.toLowerCase() );
-                        break;
-                    }
-                    default:
-                        break;
+        @Override
+        public void completed( FetchPlan.Entry entry, AttributeList attributes ) {
+            long sampledAtMs = System.currentTimeMillis();
+            for( Object attr : attributes ) {
+                try {
+                    metricsPolled += attributeProcessor.processAttribute( entry, (Attribute) attr, sampledAtMs );
+                } catch( Exception e ) {
+                    logger.error( "Error processing attribute {}", attr, e );
                 }
             }
-            m.appendTail( sb );
-            resolvedAlias = sb.toString();
-            logger.debug( "Resolved alias {} with object name {} -> {}", jmxAttribute.getAlias(), objectName, resolvedAlias );
-            resolvedAliasCache.put( key, resolvedAlias );
         }
-        return resolvedAlias;
+
+        @Override
+        public void notFound( FetchPlan.Entry entry ) {
+            logger.debug( "{} was unregistered", entry.getObjectName() );
+            connection.forget( entry.getObjectName() );
+        }
     }
 }
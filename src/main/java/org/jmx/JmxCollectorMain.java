@@ -3,23 +3,40 @@ package org.jmx;
 import static com.google.common.base.Preconditions.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.jmx.connection.ConnectionTimeouts;
 import org.jmx.connection.JmxConnectionCache;
+import org.jmx.sink.AsyncMetricSink;
+import org.jmx.sink.DogStatsdMetricSink;
+import org.jmx.sink.MetricHistory;
+import org.jmx.sink.MetricSink;
+import org.jmx.sink.OpenMetricsEndpoint;
+import org.jmx.sink.OpenMetricsSink;
+import org.jmx.statsd.DogStatsdEmitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableMBeanExport;
-import org.springframework.core.task.TaskExecutor;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 import com.fasterxml.jackson.core.JsonParser;
@@ -35,14 +52,17 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Range;
 import com.google.common.primitives.Ints;
-import com.timgroup.statsd.NonBlockingStatsDClient;
-import com.timgroup.statsd.StatsDClient;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @Configuration
 @ComponentScan
 @EnableAutoConfiguration
 @EnableMBeanExport( defaultDomain = "thps.jmx-collector" )
 public class JmxCollectorMain {
+    private static final String ATTACH_TIMEOUT_PROPERTY = "sun.tools.attach.attachTimeout";
+    private static final int MAINTENANCE_THREADS = 4;
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private MetricHistory metricHistory;
 
     @Value( "${jmxcollector.pollRateMs}" )
     private int pollRateMs;
@@ -53,13 +73,83 @@ public class JmxCollectorMain {
     @Value( "${jmxcollector.statsdPort}" )
     private int statsdPort;
 
+    @Value( "${jmxcollector.statsdMaxPacketSize:1432}" )
+    private int statsdMaxPacketSize;
+
+    @Value( "${jmxcollector.sinkQueueCapacity:65536}" )
+    private int sinkQueueCapacity;
+
+    @Value( "${jmxcollector.sinkThreads:1}" )
+    private int sinkThreads;
+
+    @Value( "${jmxcollector.pollerMode:auto}" )
+    private String pollerMode;
+
+    @Value( "${jmxcollector.pollerQueueCapacity:1024}" )
+    private int pollerQueueCapacity;
+
+    @Value( "${jmxcollector.pollerMinConcurrency:2}" )
+    private int pollerMinConcurrency;
+
+    @Value( "${jmxcollector.pollerMaxConcurrency:64}" )
+    private int pollerMaxConcurrency;
+
+    @Value( "${jmxcollector.watchConfig:true}" )
+    private boolean watchConfig;
+
+    @Value( "${jmxcollector.coreMetricsSource:jmx}" )
+    private String coreMetricsSource;
+
+    @Value( "${jmxcollector.requestWindow:4}" )
+    private int requestWindow;
+
+    @Value( "${jmxcollector.openMetricsPort:0}" )
+    private int openMetricsPort;
+
+    @Value( "${jmxcollector.openMetricsAddress:}" )
+    private String openMetricsAddress;
+
+    @Value( "${jmxcollector.historyMinutes:0}" )
+    private int historyMinutes;
+
+    @Value( "${jmxcollector.historyBudgetMb:8}" )
+    private int historyBudgetMb;
+
     @Value( "${jmxcollector.configFile}" )
     private String configFile;
 
+    @Value( "${jmxcollector.connectTimeoutMs:5000}" )
+    private long connectTimeoutMs;
+
+    @Value( "${jmxcollector.attachTimeoutMs:5000}" )
+    private long attachTimeoutMs;
+
+    @Value( "${jmxcollector.requestTimeoutMs:5000}" )
+    private long requestTimeoutMs;
+
+    @Value( "${jmxcollector.queryResyncMs:300000}" )
+    private long queryResyncMs;
+
+    @Value( "${jmxcollector.counterStateExpiryMs:600000}" )
+    private long counterStateExpiryMs;
+
+    @Value( "${jmxcollector.initialBackoffMs:2000}" )
+    private long initialBackoffMs;
+
+    @Value( "${jmxcollector.maxBackoffMs:300000}" )
+    private long maxBackoffMs;
+
     public static void main( String[] args ) {
         System.setProperty( "networkaddress.cache.ttl", "30" );
         System.setProperty( "sun.net.inetaddr.ttl", "30" );
         SpringApplication app = new SpringApplication( JmxCollectorMain.class );
+        // the attach API waits for the target's attach listener for its own timeout, read from this system property; align it with
+        // attachTimeoutMs, once and before anything attaches, unless it was set on the command line
+        app.addListeners( (ApplicationListener<ApplicationEnvironmentPreparedEvent>) event -> {
+            if( System.getProperty( ATTACH_TIMEOUT_PROPERTY ) == null ) {
+                System.setProperty( ATTACH_TIMEOUT_PROPERTY, event.getEnvironment().getProperty( "jmxcollector.attachTimeoutMs", "5000" ) );
+            }
+        } );
         if( System.getProperty( "os.name" ).toLowerCase().contains( "win" ) ) {
             app.setAdditionalProfiles( "windows" );
             System.setProperty( "java.library.path", System.getProperty( "java.home" ) + "\\jre\\bin\\" );
@@ -68,8 +158,14 @@ public class JmxCollectorMain {
     }
 
     @Bean
-    public ApplicationRunner applicationRunner() {
-        return new JmxCollector( collectorMetrics(), configFile, taskScheduler(), taskExecutor(), pollRateMs, jmxConnectionStateResolver(), statsdClient(), objectMapper() );
+    public ApplicationRunner applicationRunner() throws IOException {
+        return new JmxCollector( collectorMetrics(), configFile, taskScheduler(), pollScheduler(), jmxConnectionStateResolver(), connectionTimeouts(),
+          targetCircuitBreaker(), counterStateStore(), metricSink(), objectMapper(), collectorSettings() );
+    }
+
+    @Bean
+    public CollectorSettings collectorSettings() {
+        return new CollectorSettings( pollRateMs, CoreMetricsSource.valueOf( coreMetricsSource.toUpperCase() ), requestWindow, watchConfig );
     }
 
     @Bean
@@ -77,29 +173,85 @@ public class JmxCollectorMain {
         return new ThreadPoolTaskScheduler();
     }
 
+    @Bean( destroyMethod = "close" )
+    public PollingEngine pollingEngine() {
+        return new PollingEngine( PollingEngine.Mode.valueOf( pollerMode.toUpperCase() ), pollerQueueCapacity, pollerMinConcurrency, pollerMaxConcurrency );
+    }
+
     @Bean
-    public TaskExecutor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize( 2 );
-        executor.setMaxPoolSize( 10 );
-        executor.setKeepAliveSeconds( (pollRateMs / 1000) * 3 );
-        executor.setThreadNamePrefix( "jmx-poller-" );
-        return executor;
+    public PollScheduler pollScheduler() {
+        return new PollScheduler( taskScheduler(), pollingEngine(), pollRateMs, collectorMetrics() );
     }
 
     @Bean
     public JmxConnectionCache jmxConnectionStateResolver() {
-        return new JmxConnectionCache( pollRateMs );
+        return new JmxConnectionCache( pollRateMs, connectionTimeouts(), queryResyncMs );
     }
 
     @Bean
-    public StatsDClient statsdClient() {
-        return new NonBlockingStatsDClient( "", statsdHost, statsdPort, 1000 );
+    public TargetCircuitBreaker targetCircuitBreaker() {
+        return new TargetCircuitBreaker( initialBackoffMs, maxBackoffMs, collectorMetrics() );
+    }
+
+    @Bean
+    public CounterStateStore counterStateStore() {
+        return new CounterStateStore( 16, counterStateExpiryMs );
+    }
+
+    @Bean
+    public ConnectionTimeouts connectionTimeouts() {
+        // enough for every poller to keep a full window in flight; past that, and a queue as long again, calls are rejected and count
+        // as failures rather than piling up threads behind wedged JVMs
+        int threads = pollerMaxConcurrency * requestWindow;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>( threads ),
+          new ThreadFactoryBuilder().setNameFormat( "jmx-request-%d" ).setDaemon( true ).build(), new ThreadPoolExecutor.AbortPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+        // closes, evictions and reconnects; few at a time, queued rather than rejected, and never on the request pool they call into
+        ThreadPoolExecutor maintenanceExecutor = new ThreadPoolExecutor( MAINTENANCE_THREADS, MAINTENANCE_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), new ThreadFactoryBuilder().setNameFormat( "jmx-maintenance-%d" ).setDaemon( true ).build() );
+        maintenanceExecutor.allowCoreThreadTimeOut( true );
+        return new ConnectionTimeouts( executor, maintenanceExecutor, connectTimeoutMs, attachTimeoutMs, requestTimeoutMs, collectorMetrics() );
+    }
+
+    @Bean( destroyMethod = "close" )
+    public DogStatsdEmitter statsdEmitter() throws IOException {
+        return new DogStatsdEmitter( statsdHost, statsdPort, statsdMaxPacketSize );
+    }
+
+    @Bean( destroyMethod = "close" )
+    public AsyncMetricSink metricSink() throws IOException {
+        List<MetricSink> sinks = new ArrayList<>();
+        sinks.add( new DogStatsdMetricSink( statsdEmitter() ) );
+        if( openMetricsPort != 0 ) {
+            sinks.add( openMetricsSink() );
+        }
+        if( metricHistory() != null ) {
+            sinks.add( metricHistory() );
+        }
+        return new AsyncMetricSink( sinkQueueCapacity, sinkThreads, sinks );
+    }
+
+    @Bean
+    public OpenMetricsSink openMetricsSink() {
+        // a series is dropped once its JVM has gone unpolled for as long as its connection would be kept
+        return new OpenMetricsSink( pollRateMs * 3L );
+    }
+
+    @Bean( initMethod = "start", destroyMethod = "stop" )
+    public OpenMetricsEndpoint openMetricsEndpoint() {
+        return new OpenMetricsEndpoint( openMetricsSink(), openMetricsAddress, openMetricsPort, taskScheduler(), pollRateMs );
+    }
+
+    @Bean( initMethod = "start", destroyMethod = "stop" )
+    public CollectorTelemetry collectorTelemetry() throws IOException {
+        return new CollectorTelemetry( collectorMetrics(), pollingEngine(), jmxConnectionStateResolver(), metricSink(), statsdEmitter(), taskScheduler(),
+          pollRateMs );
     }
 
     @Bean
     public ExpressionParser expressionParser() {
-        return new SpelExpressionParser();
+        // selectors and name extractors are compiled to bytecode; anything the compiler cannot handle falls back to interpretation
+        return new SpelExpressionParser( new SpelParserConfiguration( SpelCompilerMode.MIXED, JmxCollectorMain.class.getClassLoader() ) );
     }
 
     @Bean
@@ -129,7 +281,25 @@ public class JmxCollectorMain {
 
     @Bean
     public MetricsMXBean collectorMetrics() {
-        return new MetricsMXBean();
+        return new MetricsMXBean( metricHistory() );
+    }
+
+    /**
+     * @return the history shared by the sinks and the MBean, or null when it is disabled; not a bean, so that nothing is built for it
+     * then
+     */
+    private synchronized MetricHistory metricHistory() {
+        if( metricHistory == null && historyMinutes > 0 ) {
+            long budgetBytes = historyBudgetMb * 1024L * 1024L;
+            // the collector usually runs in a small fixed heap; never let the history take more than a quarter of it
+            long maxBudgetBytes = Runtime.getRuntime().maxMemory() / 4;
+            if( budgetBytes > maxBudgetBytes ) {
+                logger.warn( "historyBudgetMb {} exceeds a quarter of the heap; keeping {}MB of history", historyBudgetMb, maxBudgetBytes / 1024 / 1024 );
+                budgetBytes = maxBudgetBytes;
+            }
+            metricHistory = new MetricHistory( TimeUnit.MINUTES.toMillis( historyMinutes ), budgetBytes );
+        }
+        return metricHistory;
     }
 
     public static class ExpressionDeserializer extends JsonDeserializer<Expression> {
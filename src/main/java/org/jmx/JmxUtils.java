@@ -3,7 +3,9 @@ package org.jmx;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.management.remote.JMXServiceURL;
 
@@ -22,6 +24,7 @@ import com.sun.tools.attach.VirtualMachineDescriptor;
 
 public final class JmxUtils {
     public static final String CONNECTOR_ADDRESS = "com.sun.management.jmxremote.localConnectorAddress";
+    private static final long LIST_PORT_PROBE_TIMEOUT_MS = 1000;
 
     private JmxUtils() {
         throw new AssertionError( "Cannot instantiate " + getClass() );
@@ -57,6 +60,29 @@ public final class JmxUtils {
     }
 
     private static void enumerateViaRmi( List<JvmInstanceConfiguration> jvmInstanceConfigurations, List<VirtualMachineConnector> connectors ) {
+        List<VirtualMachineConnector> rmiConnectors = createRmiConnectors( jvmInstanceConfigurations );
+        if( rmiConnectors.isEmpty() ) {
+            return;
+        }
+        Set<Integer> ports = new HashSet<>();
+        for( VirtualMachineConnector connector : rmiConnectors ) {
+            ports.add( ((RmiConnector) connector).getJmxPort() );
+        }
+        Set<Integer> listening;
+        try {
+            listening = PortProbe.rmiHost( LIST_PORT_PROBE_TIMEOUT_MS ).probe( ports ).getListening();
+        } catch( IOException e ) {
+            throw Throwables.propagate( e );
+        }
+        for( VirtualMachineConnector connector : rmiConnectors ) {
+            if( listening.contains( ((RmiConnector) connector).getJmxPort() ) ) {
+                connectors.add( connector );
+            }
+        }
+    }
+
+    public static List<VirtualMachineConnector> createRmiConnectors( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
+        List<VirtualMachineConnector> connectors = new ArrayList<>();
         for( JvmInstanceConfiguration jvmInstanceConfiguration : jvmInstanceConfigurations ) {
             Range<Integer> jmxPortRange = jvmInstanceConfiguration.getJmxPortRange();
 
@@ -68,6 +94,7 @@ public final class JmxUtils {
                 connectors.add( new RmiConnector( jmxPort, jvmInstanceConfiguration ));
             }
         }
+        return ImmutableList.copyOf( connectors );
     }
 
     private static void enumerateViaAttachApi( List<JvmInstanceConfiguration> jvmInstanceConfigurations, List<VirtualMachineConnector> connectors ) {
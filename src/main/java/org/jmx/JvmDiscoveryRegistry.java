@@ -0,0 +1,205 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jmx.config.JvmInstanceConfiguration;
+import org.jmx.connection.AttachApiConnector;
+import org.jmx.connection.JvmIdentity;
+import org.jmx.connection.RmiConnector;
+import org.jmx.connection.VirtualMachineConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+/**
+ * Long-lived view of the JVMs visible to the collector. Each refresh diffs the current attach descriptors against the previous
+ * refresh and reports only the targets that appeared or went away; connectors for targets that are still present are reused so
+ * that connection and failure state keyed on them stays stable.
+ * <p>
+ * Configured JMX ports are probed on every refresh and only those that accept a connection are targets, so a port range costs
+ * one round of non-blocking connects per refresh rather than an RMI connect attempt, and its failure state, per closed port.
+ * A port that refuses is reported removed; one that does not answer in time keeps its previous state.
+ */
+public final class JvmDiscoveryRegistry {
+    private static final long PORT_PROBE_TIMEOUT_MS = 250;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final PortProbe portProbe = PortProbe.rmiHost( PORT_PROBE_TIMEOUT_MS );
+    private List<JvmInstanceConfiguration> jvmInstanceConfigurations;
+    // every configured port; only the listening ones are targets
+    private final Map<Integer, RmiConnector> rmiConnectors = new LinkedHashMap<>();
+    private final Set<Integer> listeningPorts = new HashSet<>();
+    private final Map<JvmIdentity, AttachApiConnector> attachConnectors = new HashMap<>();
+    private volatile List<VirtualMachineConnector> connectors = ImmutableList.of();
+
+    public JvmDiscoveryRegistry( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
+        this.jvmInstanceConfigurations = checkNotNull( jvmInstanceConfigurations, "jvmInstanceConfigurations is required" );
+        this.rmiConnectors.putAll( rmiConnectorsByPort( jvmInstanceConfigurations ) );
+    }
+
+    private static Map<Integer, RmiConnector> rmiConnectorsByPort( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
+        Map<Integer, RmiConnector> connectors = new LinkedHashMap<>();
+        for( VirtualMachineConnector connector : JmxUtils.createRmiConnectors( jvmInstanceConfigurations ) ) {
+            RmiConnector rmiConnector = (RmiConnector) connector;
+            // overlapping port ranges: the first configuration wins, as it does for attach selectors
+            if( !connectors.containsKey( rmiConnector.getJmxPort() ) ) {
+                connectors.put( rmiConnector.getJmxPort(), rmiConnector );
+            }
+        }
+        return connectors;
+    }
+
+    /**
+     * Switches to a reloaded configuration. Connectors for attach targets and for ports that are still in range are kept and
+     * pointed at the new configuration; listening ports that left every range are reported removed, and ports that entered one
+     * are probed on the next refresh.
+     */
+    public synchronized Delta reconfigure( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
+        this.jvmInstanceConfigurations = checkNotNull( jvmInstanceConfigurations, "jvmInstanceConfigurations is required" );
+        for( AttachApiConnector connector : attachConnectors.values() ) {
+            connector.setJvmInstanceConfigurations( jvmInstanceConfigurations );
+        }
+
+        List<VirtualMachineConnector> added = new ArrayList<>();
+        List<VirtualMachineConnector> removed = new ArrayList<>();
+        Map<Integer, RmiConnector> reloaded = rmiConnectorsByPort( jvmInstanceConfigurations );
+        for( Iterator<Map.Entry<Integer, RmiConnector>> it = rmiConnectors.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, RmiConnector> entry = it.next();
+            RmiConnector replacement = reloaded.remove( entry.getKey() );
+            if( replacement == null ) {
+                if( listeningPorts.remove( entry.getKey() ) ) {
+                    removed.add( entry.getValue() );
+                }
+                it.remove();
+            } else {
+                entry.getValue().setJvmInstanceConfiguration( replacement.getJvmInstanceConfiguration() );
+            }
+        }
+        rmiConnectors.putAll( reloaded );
+        publishConnectors();
+
+        Delta delta = new Delta( added, removed );
+        if( !delta.isEmpty() ) {
+            logger.info( "Reconfigured JMX ports: {}", delta );
+        }
+        return delta;
+    }
+
+    public synchronized Delta refresh() {
+        List<VirtualMachineConnector> added = new ArrayList<>();
+        List<VirtualMachineConnector> removed = new ArrayList<>();
+
+        probeRmiPorts( added, removed );
+
+        Map<JvmIdentity, VirtualMachineDescriptor> descriptors = new HashMap<>();
+        for( VirtualMachineDescriptor descriptor : VirtualMachine.list() ) {
+            // pid and start time guard against a recycled pid being mistaken for the JVM that previously owned it
+            descriptors.put( JvmIdentity.of( descriptor ), descriptor );
+        }
+
+        for( Iterator<Map.Entry<JvmIdentity, AttachApiConnector>> it = attachConnectors.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<JvmIdentity, AttachApiConnector> entry = it.next();
+            if( !descriptors.containsKey( entry.getKey() ) ) {
+                removed.add( entry.getValue() );
+                it.remove();
+            }
+        }
+
+        for( Map.Entry<JvmIdentity, VirtualMachineDescriptor> entry : descriptors.entrySet() ) {
+            if( !attachConnectors.containsKey( entry.getKey() ) ) {
+                AttachApiConnector connector = new AttachApiConnector( entry.getValue(), entry.getKey(), jvmInstanceConfigurations );
+                attachConnectors.put( entry.getKey(), connector );
+                added.add( connector );
+            }
+        }
+
+        if( !added.isEmpty() || !removed.isEmpty() ) {
+            publishConnectors();
+        }
+
+        Delta delta = new Delta( added, removed );
+        if( !delta.isEmpty() ) {
+            logger.info( "Discovered JVM changes: {}", delta );
+        }
+        return delta;
+    }
+
+    private void probeRmiPorts( List<VirtualMachineConnector> added, List<VirtualMachineConnector> removed ) {
+        if( rmiConnectors.isEmpty() ) {
+            return;
+        }
+        PortProbe.Result result;
+        try {
+            result = portProbe.probe( rmiConnectors.keySet() );
+        } catch( IOException e ) {
+            // keep the previous result rather than dropping every port
+            logger.warn( "Unable to probe JMX ports", e );
+            return;
+        }
+        for( Integer port : result.getClosed() ) {
+            if( listeningPorts.remove( port ) ) {
+                removed.add( rmiConnectors.get( port ) );
+            }
+        }
+        for( Integer port : result.getListening() ) {
+            if( listeningPorts.add( port ) ) {
+                added.add( rmiConnectors.get( port ) );
+            }
+        }
+    }
+
+    private void publishConnectors() {
+        ImmutableList.Builder<VirtualMachineConnector> connectors = ImmutableList.<VirtualMachineConnector>builder().addAll( attachConnectors.values() );
+        for( Map.Entry<Integer, RmiConnector> entry : rmiConnectors.entrySet() ) {
+            if( listeningPorts.contains( entry.getKey() ) ) {
+                connectors.add( entry.getValue() );
+            }
+        }
+        this.connectors = connectors.build();
+    }
+
+    public List<VirtualMachineConnector> getConnectors() {
+        return connectors;
+    }
+
+    public static final class Delta {
+        private final List<VirtualMachineConnector> added;
+        private final List<VirtualMachineConnector> removed;
+
+        Delta( List<VirtualMachineConnector> added, List<VirtualMachineConnector> removed ) {
+            this.added = ImmutableList.copyOf( added );
+            this.removed = ImmutableList.copyOf( removed );
+        }
+
+        public List<VirtualMachineConnector> getAdded() {
+            return added;
+        }
+
+        public List<VirtualMachineConnector> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper( this ).add( "added", added ).add( "removed", removed ).toString();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.jmx.connection.ConnectionTimeouts;
+import org.jmx.connection.JmxConnection;
+import org.jmx.connection.VirtualMachineConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Implements the {@code list} command: reads every numeric attribute of every MBean of every JVM, several JVMs at a time and each
+ * MBean with a single getAttributes call. Results are streamed as JSON Lines - one object per attribute, or per item of a
+ * composite attribute, with the JVM, ObjectName, attribute, type and value - or collected into a metric set that
+ * {@link org.jmx.config.ConfigurationLoader} can load, with one query per ObjectName pattern.
+ */
+final class JvmLister {
+    enum Format {
+        JSON_LINES, METRIC_SET
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ConnectionTimeouts connectionTimeouts;
+    private final ObjectMapper objectMapper;
+    private final PrintStream out;
+    private final int concurrency;
+    // pattern -> attribute names, for METRIC_SET
+    private final Map<String, Set<String>> metricSet = new TreeMap<>();
+
+    JvmLister( ConnectionTimeouts connectionTimeouts, ObjectMapper objectMapper, PrintStream out, int concurrency ) {
+        this.connectionTimeouts = checkNotNull( connectionTimeouts, "connectionTimeouts is required" );
+        this.objectMapper = checkNotNull( objectMapper, "objectMapper is required" );
+        this.out = checkNotNull( out, "out is required" );
+        checkArgument( concurrency > 0, "concurrency must be > 0: %s", concurrency );
+        this.concurrency = concurrency;
+    }
+
+    void list( List<VirtualMachineConnector> connectors, Format format ) throws Exception {
+        logger.info( "Listing {} JVMs, {} at a time", connectors.size(), concurrency );
+        ExecutorService executor = Executors.newFixedThreadPool( concurrency,
+          new ThreadFactoryBuilder().setNameFormat( "jmx-list-%d" ).setDaemon( true ).build() );
+        try {
+            List<Future<?>> listings = new ArrayList<>( connectors.size() );
+            for( VirtualMachineConnector connector : connectors ) {
+                listings.add( executor.submit( () -> list( connector, format ) ) );
+            }
+            for( Future<?> listing : listings ) {
+                listing.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if( format == Format.METRIC_SET ) {
+            printMetricSet();
+        }
+        out.flush();
+    }
+
+    private void list( VirtualMachineConnector connector, Format format ) {
+        try( JmxConnection connection = connector.connect( connectionTimeouts ) ) {
+            logger.info( "#appArgs={}", connection.getConnectionMetaData().getAppArgs() );
+            String jvm = connector.toString();
+            for( ObjectName objectName : new TreeSet<>( connection.queryNames( ObjectName.WILDCARD ) ) ) {
+                try {
+                    List<Map<String, Object>> values = read( connection, objectName, jvm );
+                    if( format == Format.JSON_LINES ) {
+                        print( values );
+                    } else {
+                        collect( objectName, values );
+                    }
+                } catch( InstanceNotFoundException e ) {
+                    logger.debug( "{} was unregistered", objectName );
+                } catch( IOException e ) {
+                    throw e;
+                } catch( Exception e ) {
+                    if( format == Format.JSON_LINES ) {
+                        print( ImmutableMap.of( "jvm", jvm, "objectName", objectName.toString(), "error", String.valueOf( e.getMessage() ) ) );
+                    }
+                }
+            }
+        } catch( Exception e ) {
+            logger.warn( "Unable to list {}", connector, e );
+        }
+    }
+
+    private static List<Map<String, Object>> read( JmxConnection connection, ObjectName objectName, String jvm ) throws Exception {
+        Map<String, String> types = new LinkedHashMap<>();
+        for( MBeanAttributeInfo attributeInfo : connection.getMBeanInfo( objectName ).getAttributes() ) {
+            if( attributeInfo.isReadable() ) {
+                types.put( attributeInfo.getName(), attributeInfo.getType() );
+            }
+        }
+        List<Map<String, Object>> values = new ArrayList<>();
+        if( types.isEmpty() ) {
+            return values;
+        }
+
+        // attributes that cannot be read are left out of the result rather than failing the whole call
+        AttributeList attributes = connection.getAttributes( objectName, types.keySet().toArray( new String[ types.size() ] ) );
+        for( Attribute attribute : attributes.asList() ) {
+            Object value = attribute.getValue();
+            if( value instanceof Number ) {
+                values.add( line( jvm, objectName, attribute.getName(), types.get( attribute.getName() ), value ) );
+            } else if( value instanceof CompositeData ) {
+                CompositeData data = (CompositeData) value;
+                for( String item : data.getCompositeType().keySet() ) {
+                    Object itemValue = data.get( item );
+                    if( itemValue instanceof Number ) {
+                        values.add( line( jvm, objectName, attribute.getName() + '.' + item, data.getCompositeType().getType( item ).getClassName(),
+                          itemValue ) );
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private static Map<String, Object> line( String jvm, ObjectName objectName, String attribute, String type, Object value ) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put( "jvm", jvm );
+        line.put( "objectName", objectName.toString() );
+        line.put( "attribute", attribute );
+        line.put( "type", type );
+        line.put( "value", value );
+        return line;
+    }
+
+    private void print( List<Map<String, Object>> values ) throws IOException {
+        if( values.isEmpty() ) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for( Map<String, Object> value : values ) {
+            lines.append( objectMapper.writeValueAsString( value ) ).append( '\n' );
+        }
+        // one MBean's lines stay together when several JVMs are listed at once
+        synchronized( out ) {
+            out.print( lines );
+        }
+    }
+
+    private void print( Map<String, Object> value ) throws IOException {
+        String line = objectMapper.writeValueAsString( value );
+        synchronized( out ) {
+            out.println( line );
+        }
+    }
+
+    private void collect( ObjectName objectName, List<Map<String, Object>> values ) {
+        if( values.isEmpty() ) {
+            return;
+        }
+        String pattern = patternFor( objectName );
+        synchronized( metricSet ) {
+            Set<String> attributes = metricSet.get( pattern );
+            if( attributes == null ) {
+                attributes = new TreeSet<>();
+                metricSet.put( pattern, attributes );
+            }
+            for( Map<String, Object> value : values ) {
+                attributes.add( (String) value.get( "attribute" ) );
+            }
+        }
+    }
+
+    /**
+     * @return {@code objectName} with its {@code name} key property, which usually tells instances of the same kind of MBean
+     * apart, replaced by a wildcard
+     */
+    static String patternFor( ObjectName objectName ) {
+        StringBuilder pattern = new StringBuilder( objectName.getDomain() ).append( ':' );
+        Map<String, String> properties = new TreeMap<>( objectName.getKeyPropertyList() );
+        String type = properties.remove( "type" );
+        if( type != null ) {
+            pattern.append( "type=" ).append( type ).append( ',' );
+        }
+        for( Map.Entry<String, String> property : properties.entrySet() ) {
+            pattern.append( property.getKey() ).append( '=' ).append( "name".equals( property.getKey() ) ? "*" : property.getValue() ).append( ',' );
+        }
+        pattern.setLength( pattern.length() - 1 );
+        return pattern.toString();
+    }
+
+    private static String aliasFor( String pattern ) throws Exception {
+        ObjectName objectName = new ObjectName( pattern );
+        StringBuilder alias = new StringBuilder( objectName.getDomain() );
+        if( objectName.getKeyProperty( "type" ) != null ) {
+            alias.append( ".#{type}" );
+        }
+        if( objectName.getKeyProperty( "name" ) != null ) {
+            alias.append( ".#{name}" );
+        }
+        return alias.append( ".#{attr}" ).toString();
+    }
+
+    private void printMetricSet() throws Exception {
+        List<Map<String, Object>> queries = new ArrayList<>( metricSet.size() );
+        for( Map.Entry<String, Set<String>> entry : metricSet.entrySet() ) {
+            String alias = aliasFor( entry.getKey() );
+            List<Map<String, Object>> attributes = new ArrayList<>( entry.getValue().size() );
+            for( String attribute : entry.getValue() ) {
+                attributes.add( ImmutableMap.of( "name", attribute, "alias", alias ) );
+            }
+            queries.add( ImmutableMap.of( "pattern", entry.getKey(), "attributes", attributes ) );
+        }
+        out.println( objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString( queries ) );
+    }
+}
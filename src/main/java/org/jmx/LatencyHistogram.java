@@ -0,0 +1,138 @@
+package org.jmx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size log-linear histogram of latencies in the spirit of HdrHistogram: values below 16us are counted exactly and every
+ * power of two above that is split into eight linear sub-buckets, so any recorded value is reported within 12.5% using a few
+ * hundred counters. Recording is a couple of atomic increments and never allocates.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    // values from 2^4us up to 2^36us (about 19 hours); anything larger lands in the last bucket
+    private static final int MAX_EXPONENT = 35;
+    private static final int BUCKETS = EXACT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    public void record( long elapsedNanos ) {
+        long micros = Math.max( 0, TimeUnit.NANOSECONDS.toMicros( elapsedNanos ) );
+        counts.incrementAndGet( bucketFor( micros ) );
+        totalMicros.addAndGet( micros );
+    }
+
+    static int bucketFor( long micros ) {
+        if( micros < EXACT ) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( micros );
+        if( exponent > MAX_EXPONENT ) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that is counted in {@code bucket}
+     */
+    static long highestValueIn( int bucket ) {
+        if( bucket < EXACT ) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long subBucket = SUB_BUCKETS + (bucket - EXACT) % SUB_BUCKETS;
+        return ((subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[ BUCKETS ];
+        long count = 0;
+        for( int i = 0; i < BUCKETS; i++ ) {
+            copy[ i ] = counts.get( i );
+            count += copy[ i ];
+        }
+        return new Snapshot( copy, count, totalMicros.get() );
+    }
+
+    /**
+     * Counts at one point in time. Histograms only ever grow, so the distribution over an interval is the difference of the
+     * snapshots taken at either end of it.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot( new long[ BUCKETS ], 0, 0 );
+
+        private final long[] counts;
+        private final long count;
+        private final long totalMicros;
+
+        private Snapshot( long[] counts, long count, long totalMicros ) {
+            this.counts = counts;
+            this.count = count;
+            this.totalMicros = totalMicros;
+        }
+
+        public Snapshot since( Snapshot previous ) {
+            long[] difference = new long[ BUCKETS ];
+            long count = 0;
+            for( int i = 0; i < BUCKETS; i++ ) {
+                difference[ i ] = Math.max( 0, counts[ i ] - previous.counts[ i ] );
+                count += difference[ i ];
+            }
+            return new Snapshot( difference, count, totalMicros - previous.totalMicros );
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMs() {
+            return count == 0 ? 0 : totalMicros / 1000.0 / count;
+        }
+
+        /**
+         * @return the value at or below which {@code quantile} of the recorded values fall, in milliseconds
+         */
+        public double getPercentileMs( double quantile ) {
+            if( count == 0 ) {
+                return 0;
+            }
+            long rank = Math.max( 1, (long) Math.ceil( quantile * count ) );
+            long seen = 0;
+            for( int i = 0; i < BUCKETS; i++ ) {
+                seen += counts[ i ];
+                if( seen >= rank ) {
+                    return highestValueIn( i ) / 1000.0;
+                }
+            }
+            return getMaxMs();
+        }
+
+        public double getMaxMs() {
+            for( int i = BUCKETS - 1; i >= 0; i-- ) {
+                if( counts[ i ] > 0 ) {
+                    return highestValueIn( i ) / 1000.0;
+                }
+            }
+            return 0;
+        }
+
+        public Map<String, Number> toMap() {
+            Map<String, Number> summary = new LinkedHashMap<>();
+            summary.put( "count", count );
+            summary.put( "meanMs", getMeanMs() );
+            summary.put( "p50Ms", getPercentileMs( 0.50 ) );
+            summary.put( "p90Ms", getPercentileMs( 0.90 ) );
+            summary.put( "p99Ms", getPercentileMs( 0.99 ) );
+            summary.put( "maxMs", getMaxMs() );
+            return summary;
+        }
+    }
+}
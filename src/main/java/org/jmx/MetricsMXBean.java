@@ -1,15 +1,52 @@
 package org.jmx;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.jmx.connection.ConnectionTelemetry;
+import org.jmx.sink.MetricHistory;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
 import org.springframework.jmx.export.annotation.ManagedResource;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 @ManagedResource()
-public class MetricsMXBean {
+public class MetricsMXBean implements ConnectionTelemetry {
 
     private AtomicLong metricsCollected = new AtomicLong(  );
     private AtomicLong serverPolls = new AtomicLong(  );
+    private AtomicLong skippedPolls = new AtomicLong(  );
+    private AtomicLong circuitTrips = new AtomicLong(  );
+    private AtomicLong circuitRecoveries = new AtomicLong(  );
+    private AtomicLong openCircuits = new AtomicLong(  );
+    private AtomicLong halfOpenCircuits = new AtomicLong(  );
+    private AtomicLong excludedTargets = new AtomicLong(  );
+    private AtomicLong configurationReloads = new AtomicLong(  );
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram queryNamesLatency = new LatencyHistogram();
+    private final LatencyHistogram getAttributesLatency = new LatencyHistogram();
+    private final LatencyHistogram pollCycleLatency = new LatencyHistogram();
+    // targets that stop being polled age out instead of needing an explicit removal hook
+    private final Cache<String, LatencyHistogram> targetLatencies = CacheBuilder.newBuilder().expireAfterAccess( 1, TimeUnit.HOURS ).build();
+    // null when no history is kept
+    private final MetricHistory history;
+
+    public MetricsMXBean() {
+        this( null );
+    }
+
+    public MetricsMXBean( MetricHistory history ) {
+        this.history = history;
+    }
+
     public void incrementMetricsCollected() {
         metricsCollected.incrementAndGet();
     }
@@ -17,6 +54,84 @@ public class MetricsMXBean {
         serverPolls.incrementAndGet();
 
     }
+    public void incrementSkippedPolls() {
+        skippedPolls.incrementAndGet();
+    }
+    public void incrementCircuitTrips() {
+        circuitTrips.incrementAndGet();
+    }
+    public void incrementCircuitRecoveries() {
+        circuitRecoveries.incrementAndGet();
+    }
+    public void incrementConfigurationReloads() {
+        configurationReloads.incrementAndGet();
+    }
+    public void circuitStateChanged( CircuitState from, CircuitState to ) {
+        if( from == to ) {
+            return;
+        }
+        AtomicLong fromGauge = circuitGauge( from );
+        if( fromGauge != null ) {
+            fromGauge.decrementAndGet();
+        }
+        AtomicLong toGauge = circuitGauge( to );
+        if( toGauge != null ) {
+            toGauge.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void connected( long elapsedNanos ) {
+        connectLatency.record( elapsedNanos );
+    }
+
+    @Override
+    public void queriedNames( long elapsedNanos ) {
+        queryNamesLatency.record( elapsedNanos );
+    }
+
+    @Override
+    public void readAttributes( String target, long elapsedNanos ) {
+        getAttributesLatency.record( elapsedNanos );
+        targetLatencies.asMap().computeIfAbsent( target, key -> new LatencyHistogram() ).record( elapsedNanos );
+    }
+
+    public void recordPollCycle( long elapsedNanos ) {
+        pollCycleLatency.record( elapsedNanos );
+    }
+
+    LatencyHistogram getConnectHistogram() {
+        return connectLatency;
+    }
+
+    LatencyHistogram getQueryNamesHistogram() {
+        return queryNamesLatency;
+    }
+
+    LatencyHistogram getGetAttributesHistogram() {
+        return getAttributesLatency;
+    }
+
+    LatencyHistogram getPollCycleHistogram() {
+        return pollCycleLatency;
+    }
+
+    Map<String, LatencyHistogram> getTargetHistograms() {
+        return targetLatencies.asMap();
+    }
+
+    private AtomicLong circuitGauge( CircuitState state ) {
+        switch( state ) {
+            case OPEN:
+                return openCircuits;
+            case HALF_OPEN:
+                return halfOpenCircuits;
+            case EXCLUDED:
+                return excludedTargets;
+            default:
+                return null;
+        }
+    }
 
     @ManagedAttribute
     public long getMetricsCollected() {
@@ -27,4 +142,95 @@ public class MetricsMXBean {
     public long getServerPolls() {
         return serverPolls.get();
     }
+
+    @ManagedAttribute
+    public long getSkippedPolls() {
+        return skippedPolls.get();
+    }
+
+    @ManagedAttribute
+    public long getCircuitTrips() {
+        return circuitTrips.get();
+    }
+
+    @ManagedAttribute
+    public long getCircuitRecoveries() {
+        return circuitRecoveries.get();
+    }
+
+    @ManagedAttribute
+    public long getOpenCircuits() {
+        return openCircuits.get();
+    }
+
+    @ManagedAttribute
+    public long getHalfOpenCircuits() {
+        return halfOpenCircuits.get();
+    }
+
+    @ManagedAttribute
+    public long getExcludedTargets() {
+        return excludedTargets.get();
+    }
+
+    @ManagedAttribute
+    public long getConfigurationReloads() {
+        return configurationReloads.get();
+    }
+
+    @ManagedAttribute
+    public Map<String, Number> getConnectLatency() {
+        return connectLatency.snapshot().toMap();
+    }
+
+    @ManagedAttribute
+    public Map<String, Number> getQueryNamesLatency() {
+        return queryNamesLatency.snapshot().toMap();
+    }
+
+    @ManagedAttribute
+    public Map<String, Number> getGetAttributesLatency() {
+        return getAttributesLatency.snapshot().toMap();
+    }
+
+    @ManagedAttribute
+    public Map<String, Number> getPollCycleLatency() {
+        return pollCycleLatency.snapshot().toMap();
+    }
+
+    /**
+     * @return the 99th percentile getAttributes latency in ms of each target since it was first polled
+     */
+    @ManagedAttribute
+    public Map<String, Double> getTargetGetAttributesP99Ms() {
+        Map<String, Double> latencies = new TreeMap<>();
+        for( Map.Entry<String, LatencyHistogram> entry : targetLatencies.asMap().entrySet() ) {
+            latencies.put( entry.getKey(), entry.getValue().snapshot().getPercentileMs( 0.99 ) );
+        }
+        return latencies;
+    }
+
+    /**
+     * @return the recent samples of every series whose name matches {@code namePattern}, see {@link MetricHistory#query}
+     */
+    @ManagedOperation( description = "Recent samples of the series whose name matches a pattern in which * stands for any characters" )
+    @ManagedOperationParameters( {
+      @ManagedOperationParameter( name = "namePattern", description = "metric name, * for any characters" ),
+      @ManagedOperationParameter( name = "minutes", description = "how far back to go" ) } )
+    public List<Map<String, Object>> queryHistory( String namePattern, int minutes ) {
+        if( history == null ) {
+            return Collections.emptyList();
+        }
+        return history.query( namePattern, System.currentTimeMillis() - TimeUnit.MINUTES.toMillis( minutes ) );
+    }
+
+    @ManagedAttribute
+    public int getHistorySeries() {
+        return history == null ? 0 : history.getSeriesCount();
+    }
+
+    @ManagedAttribute
+    public long getHistoryBytes() {
+        return history == null ? 0 : history.getSizeBytes();
+    }
 }
@@ -0,0 +1,116 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jmx.config.JmxAttribute;
+import org.jmx.config.MetricQuery;
+import org.jmx.connection.AttachApiConnector;
+import org.jmx.connection.ConnectionMetaData;
+import org.jmx.connection.VirtualMachineConnector;
+import org.jmx.perfdata.CoreJvmCounters;
+import org.jmx.perfdata.CounterReading;
+import org.jmx.perfdata.PerfData;
+import org.jmx.perfdata.PerfDataLocator;
+import org.jmx.sink.TagSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the core JVM metrics of local JVMs from their memory-mapped performance data instead of over JMX. Each counter reading
+ * is bound to the core metric set attributes whose pattern matches the MXBean it stands in for, so the metrics go out under
+ * the aliases and types the JMX path would use. A poll reads the mapping and touches neither the network nor the target JVM.
+ */
+final class PerfDataPoller {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final AttributeProcessor attributeProcessor;
+    private final Map<VirtualMachineConnector, Target> targets = new ConcurrentHashMap<>();
+
+    PerfDataPoller( AttributeProcessor attributeProcessor ) {
+        this.attributeProcessor = checkNotNull( attributeProcessor, "attributeProcessor is required" );
+    }
+
+    /**
+     * @return the number of core metrics read, or -1 if the JVM publishes no performance data and its core metrics have to be
+     * read over JMX
+     */
+    int poll( AttachApiConnector connector, ConnectionMetaData connectionMetaData ) {
+        Target target = targets.get( connector );
+        if( target == null || target.perfData != null && target.perfData.hasNewCounters() ) {
+            PerfData perfData;
+            try {
+                perfData = open( connector );
+            } catch( IOException e ) {
+                // e.g. a JVM that has not finished starting; try again next time
+                logger.debug( "Unable to read the performance data of {}", connector, e );
+                return -1;
+            }
+            target = new Target( perfData );
+            targets.put( connector, target );
+        }
+        if( target.perfData == null ) {
+            return -1;
+        }
+        if( target.connectionMetaData != connectionMetaData ) {
+            target.bind( connectionMetaData );
+            logger.debug( "Bound {} core metrics to the performance data of {}", target.metrics.length, connector );
+        }
+
+        long sampledAtMs = System.currentTimeMillis();
+        for( int i = 0; i < target.metrics.length; i++ ) {
+            attributeProcessor.processValue( target.metrics[ i ], target.readings[ i ].read(), sampledAtMs );
+        }
+        return target.metrics.length;
+    }
+
+    void forget( VirtualMachineConnector connector ) {
+        targets.remove( connector );
+    }
+
+    private static PerfData open( AttachApiConnector connector ) throws IOException {
+        Path file = PerfDataLocator.find( connector.getPid() );
+        return file == null ? null : PerfData.open( file );
+    }
+
+    private static final class Target {
+        // null for a JVM that publishes no performance data
+        private final PerfData perfData;
+        private ConnectionMetaData connectionMetaData;
+        // metrics[i] is read by readings[i]
+        private CounterReading[] readings;
+        private PlannedMetric[] metrics;
+
+        private Target( PerfData perfData ) {
+            this.perfData = perfData;
+        }
+
+        void bind( ConnectionMetaData connectionMetaData ) {
+            TagSet tags = new TagSet( connectionMetaData.getJvmInstanceTags() );
+            List<CounterReading> readings = new ArrayList<>();
+            List<PlannedMetric> metrics = new ArrayList<>();
+            for( CounterReading reading : CoreJvmCounters.resolve( perfData ) ) {
+                for( MetricQuery metricQuery : connectionMetaData.getJvmInstanceConfiguration().getMetricSet() ) {
+                    if( !metricQuery.isCore() || !metricQuery.getPattern().apply( reading.getObjectName() ) ) {
+                        continue;
+                    }
+                    for( JmxAttribute jmxAttribute : metricQuery.findAttributesFor( reading.getAttributeName() ) ) {
+                        if( Objects.equals( jmxAttribute.getNestedName(), reading.getNestedName() ) ) {
+                            readings.add( reading );
+                            metrics.add( new PlannedMetric( jmxAttribute, reading.getObjectName(), tags ) );
+                        }
+                    }
+                }
+            }
+            this.readings = readings.toArray( new CounterReading[ readings.size() ] );
+            this.metrics = metrics.toArray( new PlannedMetric[ metrics.size() ] );
+            this.connectionMetaData = connectionMetaData;
+        }
+    }
+}
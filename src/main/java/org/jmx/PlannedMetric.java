@@ -0,0 +1,42 @@
+package org.jmx;
+
+import javax.management.ObjectName;
+
+import org.jmx.config.JmxAttribute;
+import org.jmx.sink.MetricSeries;
+import org.jmx.sink.TagSet;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * One configured attribute bound to one concrete MBean, with its alias resolved for as long as the fetch plan that owns it lives.
+ */
+final class PlannedMetric {
+    private final JmxAttribute attribute;
+    private final MetricSeries series;
+
+    PlannedMetric( JmxAttribute attribute, ObjectName objectName, TagSet tags ) {
+        this.attribute = attribute;
+        this.series = new MetricSeries( attribute.getAliasTemplate().resolve( objectName ), tags );
+    }
+
+    JmxAttribute getAttribute() {
+        return attribute;
+    }
+
+    String getAlias() {
+        return series.getName();
+    }
+
+    /**
+     * @return the alias and tag combination this metric is reported under
+     */
+    MetricSeries getSeries() {
+        return series;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "alias", series.getName() ).toString();
+    }
+}
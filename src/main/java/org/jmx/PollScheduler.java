@@ -0,0 +1,134 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jmx.connection.VirtualMachineConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Owns one fixed-rate schedule per target. Start times are spread with a random offset across the poll interval, and a tick that
+ * fires while the previous poll of the same target is still queued or running is coalesced into it rather than queued again.
+ */
+@ManagedResource
+public class PollScheduler {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final TaskScheduler taskScheduler;
+    private final PollingEngine pollingEngine;
+    private final int rateMs;
+    private final MetricsMXBean collectorMetrics;
+    private final ConcurrentMap<VirtualMachineConnector, TargetSchedule> schedules = new ConcurrentHashMap<>();
+
+    public PollScheduler( TaskScheduler taskScheduler, PollingEngine pollingEngine, int rateMs, MetricsMXBean collectorMetrics ) {
+        this.taskScheduler = checkNotNull( taskScheduler, "taskScheduler is required" );
+        this.pollingEngine = checkNotNull( pollingEngine, "pollingEngine is required" );
+        checkArgument( rateMs > 0, "rateMs must be > 0: %s", rateMs );
+        this.rateMs = rateMs;
+        this.collectorMetrics = checkNotNull( collectorMetrics, "collectorMetrics is required" );
+    }
+
+    public void schedule( VirtualMachineConnector connector, Runnable poll ) {
+        TargetSchedule schedule = new TargetSchedule( connector, poll );
+        if( schedules.putIfAbsent( connector, schedule ) == null ) {
+            long jitterMs = ThreadLocalRandom.current().nextLong( rateMs );
+            schedule.future = taskScheduler.scheduleAtFixedRate( schedule::tick, new Date( System.currentTimeMillis() + jitterMs ), rateMs );
+            logger.debug( "Scheduled {} every {}ms starting in {}ms", connector, rateMs, jitterMs );
+        }
+    }
+
+    public void cancel( VirtualMachineConnector connector ) {
+        TargetSchedule schedule = schedules.remove( connector );
+        if( schedule != null && schedule.future != null ) {
+            schedule.future.cancel( false );
+            logger.debug( "Cancelled schedule for {}", connector );
+        }
+    }
+
+    public long getLagMs( VirtualMachineConnector connector ) {
+        TargetSchedule schedule = schedules.get( connector );
+        return schedule == null ? 0 : schedule.lagMs();
+    }
+
+    @ManagedAttribute
+    public int getScheduledTargets() {
+        return schedules.size();
+    }
+
+    @ManagedAttribute
+    public long getMaxLagMs() {
+        long max = 0;
+        for( TargetSchedule schedule : schedules.values() ) {
+            max = Math.max( max, schedule.lagMs() );
+        }
+        return max;
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getLaggingTargets() {
+        Map<String, Long> lagging = new TreeMap<>();
+        for( TargetSchedule schedule : schedules.values() ) {
+            long lagMs = schedule.lagMs();
+            if( lagMs > 0 ) {
+                lagging.put( schedule.connector.toString(), lagMs );
+            }
+        }
+        return lagging;
+    }
+
+    private final class TargetSchedule {
+        private final VirtualMachineConnector connector;
+        private final Runnable poll;
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        private final AtomicLong queuedAtNanos = new AtomicLong();
+        private volatile ScheduledFuture<?> future;
+
+        private TargetSchedule( VirtualMachineConnector connector, Runnable poll ) {
+            this.connector = connector;
+            this.poll = poll;
+        }
+
+        private void tick() {
+            if( !inFlight.compareAndSet( false, true ) ) {
+                collectorMetrics.incrementSkippedPolls();
+                logger.debug( "Previous poll of {} still in flight ({}ms behind); skipping tick", connector, lagMs() );
+                return;
+            }
+            queuedAtNanos.set( System.nanoTime() );
+            if( !pollingEngine.submit( connector, this::run ) ) {
+                inFlight.set( false );
+                collectorMetrics.incrementSkippedPolls();
+                logger.warn( "Poll of {} rejected; polling queue is full", connector );
+            }
+        }
+
+        private void run() {
+            try {
+                poll.run();
+            } finally {
+                inFlight.set( false );
+            }
+        }
+
+        private long lagMs() {
+            if( !inFlight.get() ) {
+                return 0;
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - queuedAtNanos.get() );
+            return Math.max( 0, elapsedMs - rateMs );
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs polls with bounded queueing, fairness across targets and a concurrency limit that follows the observed I/O wait.
+ * <p>
+ * Work is queued per target and targets are served round robin, at most one task per target at a time, so a target with a
+ * backlog or a slow MBean server only ever occupies one worker. The total number of queued tasks is capped; beyond that
+ * {@link #submit} refuses work instead of letting stale polls pile up.
+ * <p>
+ * After every batch of completed tasks the limit is re-derived from the time those tasks spent blocked versus on CPU,
+ * {@code cores * (1 + wait / cpu)}, and clamped to the configured bounds. Tasks run on virtual threads where the JVM has them
+ * (Java 21+) and on a daemon platform pool otherwise.
+ */
+@ManagedResource
+public class PollingEngine implements AutoCloseable {
+    private static final int ADJUST_EVERY = 32;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final int queueCapacity;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+
+    // guarded by this
+    private final Map<Object, ArrayDeque<Runnable>> pending = new HashMap<>();
+    private final ArrayDeque<Object> ready = new ArrayDeque<>();
+    private int queued;
+    private int active;
+    private int limit;
+    private long windowWaitNanos;
+    private long windowCpuNanos;
+    private int windowTasks;
+    // whether a task of the current window ran without CPU time, e.g. on a virtual thread
+    private boolean cpuTimeUnavailable;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile double ioWaitRatio;
+
+    public enum Mode {
+        AUTO, PLATFORM, VIRTUAL
+    }
+
+    public PollingEngine( Mode mode, int queueCapacity, int minConcurrency, int maxConcurrency ) {
+        checkNotNull( mode, "mode is required" );
+        checkArgument( queueCapacity > 0, "queueCapacity must be > 0: %s", queueCapacity );
+        checkArgument( minConcurrency > 0, "minConcurrency must be > 0: %s", minConcurrency );
+        checkArgument( maxConcurrency >= minConcurrency, "maxConcurrency must be >= minConcurrency: %s < %s", maxConcurrency, minConcurrency );
+        this.queueCapacity = queueCapacity;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.limit = minConcurrency;
+
+        ExecutorService virtual = mode == Mode.PLATFORM ? null : newVirtualThreadExecutor();
+        if( virtual == null && mode == Mode.VIRTUAL ) {
+            throw new IllegalStateException( "Virtual threads require Java 21 or later; running on " + System.getProperty( "java.version" ) );
+        }
+        this.virtualThreads = virtual != null;
+        // the engine never runs more than maxConcurrency tasks, which bounds the platform pool as well
+        this.executor = virtual != null ? virtual
+          : Executors.newCachedThreadPool( new ThreadFactoryBuilder().setNameFormat( "jmx-poller-%d" ).setDaemon( true ).build() );
+        this.cpuTimeSupported = threadMXBean.isCurrentThreadCpuTimeSupported();
+        if( cpuTimeSupported ) {
+            threadMXBean.setThreadCpuTimeEnabled( true );
+        }
+        logger.info( "Polling on {} threads, concurrency {}-{}, queue capacity {}", virtualThreads ? "virtual" : "platform", minConcurrency, maxConcurrency,
+          queueCapacity );
+    }
+
+    /**
+     * Looks up {@code Thread.ofVirtual()} reflectively so the collector still compiles for and runs on Java 8.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+            Class<?> builderType = Class.forName( "java.lang.Thread$Builder" );
+            builder = builderType.getMethod( "name", String.class, long.class ).invoke( builder, "jmx-poller-", 0L );
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod( "factory" ).invoke( builder );
+            Method newThreadPerTaskExecutor = Executors.class.getMethod( "newThreadPerTaskExecutor", ThreadFactory.class );
+            return (ExecutorService) newThreadPerTaskExecutor.invoke( null, factory );
+        } catch( ReflectiveOperationException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Queues {@code task} behind any other work for {@code target}.
+     *
+     * @return false if the queue is full and the task was not accepted
+     */
+    public boolean submit( Object target, Runnable task ) {
+        synchronized( this ) {
+            if( queued >= queueCapacity ) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            ArrayDeque<Runnable> tasks = pending.get( target );
+            if( tasks == null ) {
+                tasks = new ArrayDeque<>( 2 );
+                pending.put( target, tasks );
+                ready.addLast( target );
+            }
+            tasks.addLast( task );
+            queued++;
+        }
+        dispatch();
+        return true;
+    }
+
+    private void dispatch() {
+        while( true ) {
+            Object target;
+            Runnable task;
+            synchronized( this ) {
+                if( active >= limit || ready.isEmpty() ) {
+                    return;
+                }
+                target = ready.pollFirst();
+                task = pending.get( target ).pollFirst();
+                queued--;
+                active++;
+            }
+            try {
+                executor.execute( () -> run( target, task ) );
+            } catch( RuntimeException e ) {
+                logger.warn( "Unable to start poll of {}", target, e );
+                // nothing ran, so there is no timing to learn from
+                release( target );
+            }
+        }
+    }
+
+    private void run( Object target, Runnable task ) {
+        long startNanos = System.nanoTime();
+        long startCpuNanos = cpuTimeSupported ? threadMXBean.getCurrentThreadCpuTime() : -1;
+        try {
+            task.run();
+        } catch( RuntimeException e ) {
+            logger.warn( "Poll of {} failed", target, e );
+        } finally {
+            long cpuNanos = startCpuNanos < 0 ? -1 : threadMXBean.getCurrentThreadCpuTime() - startCpuNanos;
+            finished( target, System.nanoTime() - startNanos, cpuNanos );
+            completed.incrementAndGet();
+            dispatch();
+        }
+    }
+
+    private synchronized void finished( Object target, long wallNanos, long cpuNanos ) {
+        release( target );
+        if( cpuNanos < 0 ) {
+            // virtual threads do not report CPU time, and some platforms none at all
+            cpuTimeUnavailable = true;
+        } else {
+            windowCpuNanos += cpuNanos;
+            windowWaitNanos += Math.max( 0, wallNanos - cpuNanos );
+        }
+        if( ++windowTasks >= ADJUST_EVERY ) {
+            adjustLimit();
+        }
+    }
+
+    private synchronized void release( Object target ) {
+        active--;
+        ArrayDeque<Runnable> tasks = pending.get( target );
+        if( tasks.isEmpty() ) {
+            pending.remove( target );
+        } else {
+            // back of the line, behind every other target with work waiting
+            ready.addLast( target );
+        }
+    }
+
+    private void adjustLimit() {
+        int target;
+        if( cpuTimeUnavailable ) {
+            target = maxConcurrency;
+        } else {
+            double ratio = windowWaitNanos / (double) Math.max( 1, windowCpuNanos );
+            ioWaitRatio = ratio;
+            target = (int) Math.min( Integer.MAX_VALUE, Math.ceil( cores * (1 + ratio) ) );
+        }
+        int previous = limit;
+        // move halfway each time so a single unusual window does not swing the pool
+        int next = Math.max( minConcurrency, Math.min( maxConcurrency, (previous + target + 1) / 2 ) );
+        limit = next;
+        if( next != previous ) {
+            logger.debug( "Poll concurrency {} -> {} (I/O wait ratio {})", previous, next, ioWaitRatio );
+        }
+        windowWaitNanos = 0;
+        windowCpuNanos = 0;
+        windowTasks = 0;
+        cpuTimeUnavailable = false;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination( 5, TimeUnit.SECONDS );
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @ManagedAttribute
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @ManagedAttribute
+    public synchronized int getActiveTasks() {
+        return active;
+    }
+
+    @ManagedAttribute
+    public synchronized int getConcurrencyLimit() {
+        return limit;
+    }
+
+    @ManagedAttribute
+    public double getIoWaitRatio() {
+        return ioWaitRatio;
+    }
+
+    @ManagedAttribute
+    public long getCompletedTasks() {
+        return completed.get();
+    }
+
+    @ManagedAttribute
+    public long getRejectedTasks() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+}
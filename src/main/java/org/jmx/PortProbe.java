@@ -0,0 +1,138 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Finds which local TCP ports accept connections, without blocking on any one of them: a non-blocking connect is started to
+ * every port of a batch and a single selector waits for them to complete or be refused. On a local address a closed port is
+ * refused at once, so a whole port range is checked in a few milliseconds. A port that neither accepts nor refuses within the timeout,
+ * e.g. one whose accept backlog is full, is reported as neither listening nor closed.
+ */
+final class PortProbe {
+    // bounds the file descriptors one probe holds open at a time
+    private static final int BATCH_SIZE = 512;
+
+    // null for the local host, looked up on every probe
+    private final InetAddress address;
+    private final long timeoutMs;
+
+    PortProbe( InetAddress address, long timeoutMs ) {
+        this.address = address;
+        checkArgument( timeoutMs > 0, "timeoutMs must be > 0: %s", timeoutMs );
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @return a probe of the address {@link org.jmx.connection.RmiConnector} connects to: its URLs leave the host empty, which RMI
+     * resolves to the local host's address rather than loopback, so an agent bound to that interface alone is still found
+     */
+    static PortProbe rmiHost( long timeoutMs ) {
+        return new PortProbe( null, timeoutMs );
+    }
+
+    Result probe( Collection<Integer> ports ) throws IOException {
+        InetAddress address = this.address != null ? this.address : InetAddress.getLocalHost();
+        Set<Integer> listening = new TreeSet<>();
+        Set<Integer> closed = new TreeSet<>( ports );
+        for( List<Integer> batch : Iterables.partition( ports, BATCH_SIZE ) ) {
+            Set<Integer> unanswered = probe( address, batch, listening );
+            closed.removeAll( unanswered );
+        }
+        closed.removeAll( listening );
+        return new Result( listening, closed );
+    }
+
+    /**
+     * @return the ports that neither accepted nor refused in time
+     */
+    private Set<Integer> probe( InetAddress address, List<Integer> ports, Set<Integer> listening ) throws IOException {
+        Set<Integer> unanswered = new TreeSet<>();
+        List<SocketChannel> channels = new ArrayList<>( ports.size() );
+        try( Selector selector = Selector.open() ) {
+            for( Integer port : ports ) {
+                SocketChannel channel = SocketChannel.open();
+                channels.add( channel );
+                channel.configureBlocking( false );
+                try {
+                    if( channel.connect( new InetSocketAddress( address, port ) ) ) {
+                        listening.add( port );
+                    } else {
+                        channel.register( selector, SelectionKey.OP_CONNECT, port );
+                        unanswered.add( port );
+                    }
+                } catch( IOException e ) {
+                    // refused straight away
+                }
+            }
+
+            long deadlineNanos = System.nanoTime() + timeoutMs * 1000000L;
+            while( !unanswered.isEmpty() ) {
+                long remainingMs = (deadlineNanos - System.nanoTime()) / 1000000L;
+                if( remainingMs <= 0 || selector.select( remainingMs ) == 0 && System.nanoTime() >= deadlineNanos ) {
+                    break;
+                }
+                for( Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    key.cancel();
+                    unanswered.remove( key.attachment() );
+                    try {
+                        if( ((SocketChannel) key.channel()).finishConnect() ) {
+                            listening.add( (Integer) key.attachment() );
+                        }
+                    } catch( IOException e ) {
+                        // refused
+                    }
+                }
+            }
+        } finally {
+            for( SocketChannel channel : channels ) {
+                try {
+                    channel.close();
+                } catch( IOException e ) {
+                    // nothing was sent; nothing to lose
+                }
+            }
+        }
+        return unanswered;
+    }
+
+    static final class Result {
+        private final Set<Integer> listening;
+        private final Set<Integer> closed;
+
+        private Result( Set<Integer> listening, Set<Integer> closed ) {
+            this.listening = listening;
+            this.closed = closed;
+        }
+
+        /**
+         * @return the ports that accepted a connection
+         */
+        Set<Integer> getListening() {
+            return listening;
+        }
+
+        /**
+         * @return the ports that refused a connection
+         */
+        Set<Integer> getClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.jmx;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jmx.connection.VirtualMachineConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the health of every polled target. Targets that are not a matching JVM are excluded until discovery reports them gone;
+ * any other failure opens the circuit for an exponentially growing backoff, after which a single half-open probe decides whether
+ * the target recovers or backs off further.
+ */
+public final class TargetCircuitBreaker {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ConcurrentMap<VirtualMachineConnector, Circuit> circuits = new ConcurrentHashMap<>();
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final MetricsMXBean collectorMetrics;
+
+    public TargetCircuitBreaker( long initialBackoffMs, long maxBackoffMs, MetricsMXBean collectorMetrics ) {
+        checkArgument( initialBackoffMs > 0, "initialBackoffMs must be > 0: %s", initialBackoffMs );
+        checkArgument( maxBackoffMs >= initialBackoffMs, "maxBackoffMs must be >= initialBackoffMs: %s", maxBackoffMs );
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.collectorMetrics = checkNotNull( collectorMetrics, "collectorMetrics is required" );
+    }
+
+    public boolean allowRequest( VirtualMachineConnector connector ) {
+        Circuit circuit = circuits.get( connector );
+        return circuit == null || circuit.allowRequest( System.currentTimeMillis() );
+    }
+
+    public void recordSuccess( VirtualMachineConnector connector ) {
+        Circuit circuit = circuits.remove( connector );
+        if( circuit != null ) {
+            circuit.close();
+        }
+    }
+
+    /**
+     * Records a poll that was turned away without trying the target, e.g. while it reconnects in the background. A half-open
+     * circuit goes back to open, ready to be probed again by the next poll, so that it is not left waiting for a verdict.
+     */
+    public void recordSkipped( VirtualMachineConnector connector ) {
+        Circuit circuit = circuits.get( connector );
+        if( circuit != null ) {
+            circuit.skip( System.currentTimeMillis() );
+        }
+    }
+
+    public void recordNotMatching( VirtualMachineConnector connector ) {
+        circuitFor( connector ).exclude();
+    }
+
+    public void recordFailure( VirtualMachineConnector connector, Throwable cause ) {
+        circuitFor( connector ).fail( System.currentTimeMillis(), cause );
+    }
+
+    public void forget( VirtualMachineConnector connector ) {
+        Circuit circuit = circuits.remove( connector );
+        if( circuit != null ) {
+            circuit.discard();
+        }
+    }
+
+    /**
+     * Gives every target previously found not to be a matching JVM another chance, e.g. after the selectors were reconfigured.
+     *
+     * @return the number of targets re-admitted
+     */
+    public int forgetExcluded() {
+        int forgotten = 0;
+        for( Map.Entry<VirtualMachineConnector, Circuit> entry : circuits.entrySet() ) {
+            if( entry.getValue().state == CircuitState.EXCLUDED && circuits.remove( entry.getKey(), entry.getValue() ) ) {
+                entry.getValue().discard();
+                forgotten++;
+            }
+        }
+        return forgotten;
+    }
+
+    public CircuitState getState( VirtualMachineConnector connector ) {
+        Circuit circuit = circuits.get( connector );
+        return circuit == null ? CircuitState.CLOSED : circuit.state;
+    }
+
+    private Circuit circuitFor( VirtualMachineConnector connector ) {
+        Circuit circuit = circuits.get( connector );
+        if( circuit == null ) {
+            Circuit created = new Circuit( connector );
+            circuit = circuits.putIfAbsent( connector, created );
+            if( circuit == null ) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    private final class Circuit {
+        private final VirtualMachineConnector connector;
+        private CircuitState state = CircuitState.CLOSED;
+        private int consecutiveFailures;
+        private long retryAtMs;
+
+        private Circuit( VirtualMachineConnector connector ) {
+            this.connector = connector;
+        }
+
+        private synchronized boolean allowRequest( long nowMs ) {
+            switch( state ) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if( nowMs >= retryAtMs ) {
+                        transition( CircuitState.HALF_OPEN );
+                        logger.debug( "Probing {} after {} failures", connector, consecutiveFailures );
+                        return true;
+                    }
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        private synchronized void fail( long nowMs, Throwable cause ) {
+            if( state == CircuitState.EXCLUDED ) {
+                return;
+            }
+            consecutiveFailures++;
+            long backoffMs = Math.min( maxBackoffMs, initialBackoffMs << Math.min( consecutiveFailures - 1, 30 ) );
+            retryAtMs = nowMs + backoffMs;
+            if( state == CircuitState.CLOSED ) {
+                collectorMetrics.incrementCircuitTrips();
+            }
+            transition( CircuitState.OPEN );
+            logger.debug( "Backing off {} for {}ms after {} consecutive failures", connector, backoffMs, consecutiveFailures, cause );
+        }
+
+        private synchronized void skip( long nowMs ) {
+            if( state == CircuitState.HALF_OPEN ) {
+                retryAtMs = nowMs;
+                transition( CircuitState.OPEN );
+            }
+        }
+
+        private synchronized void exclude() {
+            logger.debug( "Excluding {}: not a matching JVM", connector );
+            transition( CircuitState.EXCLUDED );
+        }
+
+        private synchronized void close() {
+            if( state == CircuitState.HALF_OPEN ) {
+                collectorMetrics.incrementCircuitRecoveries();
+                logger.info( "{} recovered after {} failures", connector, consecutiveFailures );
+            }
+            transition( CircuitState.CLOSED );
+        }
+
+        private synchronized void discard() {
+            transition( CircuitState.CLOSED );
+        }
+
+        private void transition( CircuitState to ) {
+            collectorMetrics.circuitStateChanged( state, to );
+            state = to;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.jmx.config;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A metric alias such as {@code jvm.#{type}.#{name}.#{attr}} parsed once at configuration load. {@code #{attr}} is constant for
+ * an attribute and is folded into the surrounding literal text; {@code #{name}} and {@code #{type}} are looked up on the ObjectName
+ * at resolve time. Unknown placeholders are kept verbatim.
+ */
+public final class AliasTemplate {
+    private static final String NAME = "name";
+    private static final String TYPE = "type";
+    private static final String ATTR = "attr";
+
+    private final String alias;
+    // literals[i] precedes keyProperties[i]; the final literal has no key property after it
+    private final String[] literals;
+    private final String[] keyProperties;
+
+    private AliasTemplate( String alias, List<String> literals, List<String> keyProperties ) {
+        this.alias = alias;
+        this.literals = literals.toArray( new String[ literals.size() ] );
+        this.keyProperties = keyProperties.toArray( new String[ keyProperties.size() ] );
+    }
+
+    public static AliasTemplate compile( String alias, String attributeName, String nestedName ) {
+        checkNotNull( alias, "alias is required for attribute %s", attributeName );
+        List<String> literals = new ArrayList<>();
+        List<String> keyProperties = new ArrayList<>();
+
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while( pos < alias.length() ) {
+            int start = alias.indexOf( "#{", pos );
+            int end = start < 0 ? -1 : alias.indexOf( '}', start + 2 );
+            if( end < 0 ) {
+                literal.append( alias, pos, alias.length() );
+                break;
+            }
+            literal.append( alias, pos, start );
+            String placeholder = alias.substring( start + 2, end );
+            switch( placeholder ) {
+                case NAME:
+                case TYPE:
+                    literals.add( literal.toString() );
+                    keyProperties.add( placeholder );
+                    literal.setLength( 0 );
+                    break;
+                case ATTR:
+                    String attr = nestedName == null ? attributeName : attributeName + '.' + nestedName;
+                    literal.append( splitCamelCase( attr, false ) );
+                    break;
+                default:
+                    literal.append( alias, start, end + 1 );
+                    break;
+            }
+            pos = end + 1;
+        }
+        literals.add( literal.toString() );
+        return new AliasTemplate( alias, literals, keyProperties );
+    }
+
+    public String resolve( ObjectName objectName ) {
+        if( keyProperties.length == 0 ) {
+            return literals[ 0 ];
+        }
+        StringBuilder sb = new StringBuilder( alias.length() + 16 );
+        for( int i = 0; i < keyProperties.length; i++ ) {
+            sb.append( literals[ i ] );
+            String value = objectName.getKeyProperty( keyProperties[ i ] );
+            if( value != null ) {
+                sb.append( splitCamelCase( value, true ) );
+            }
+        }
+        return sb.append( literals[ keyProperties.length ] ).toString();
+    }
+
+    /**
+     * Lower-cases {@code value}, separating camel-case humps with '_' and optionally replacing anything that is not a letter or
+     * digit with '_' as well: {@code "PS MarkSweep"} becomes {@code "ps_mark_sweep"}.
+     */
+    static String splitCamelCase( String value, boolean replaceNonAlphanumeric ) {
+        StringBuilder sb = new StringBuilder( value.length() + 4 );
+        char previous = 0;
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if( replaceNonAlphanumeric && !isAsciiAlphanumeric( c ) ) {
+                c = '_';
+            }
+            if( c >= 'A' && c <= 'Z' ) {
+                if( previous >= 'a' && previous <= 'z' ) {
+                    sb.append( '_' );
+                }
+                sb.append( (char) (c + ('a' - 'A')) );
+            } else {
+                sb.append( Character.toLowerCase( c ) );
+            }
+            previous = c;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isAsciiAlphanumeric( char c ) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "alias", alias ).toString();
+    }
+}
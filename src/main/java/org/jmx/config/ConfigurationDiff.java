@@ -0,0 +1,152 @@
+package org.jmx.config;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+/**
+ * The difference between the running configuration and a freshly loaded one, computed per {@link JvmInstanceConfiguration} and
+ * {@link MetricQuery}.
+ * <p>
+ * A reloaded configuration that selects and names JVMs exactly like a running one is <em>retained</em>: if it is equivalent the
+ * running instance is kept as is, otherwise the reloaded instance takes its place with every unchanged {@link MetricQuery}
+ * replaced by the running instance, so connections can be rebound to it without reconnecting and cached query results stay
+ * valid. Anything else is added or removed.
+ * <p>
+ * Attach targets are matched against the selectors in order, first match wins, so a target's match only carries over if every
+ * selector up to and including the one it matched is retained in the same order.
+ */
+public final class ConfigurationDiff {
+    private final List<JvmInstanceConfiguration> previous;
+    private final List<JvmInstanceConfiguration> configurations;
+    private final Map<JvmInstanceConfiguration, JvmInstanceConfiguration> replacements = new IdentityHashMap<>();
+    private final Set<JvmInstanceConfiguration> stableSelections = Sets.newIdentityHashSet();
+    private final int added;
+    private final int changed;
+    private final boolean newSelectors;
+
+    private ConfigurationDiff( List<JvmInstanceConfiguration> previous, List<JvmInstanceConfiguration> reloaded ) {
+        this.previous = previous;
+        List<JvmInstanceConfiguration> unclaimed = new ArrayList<>( previous );
+        List<JvmInstanceConfiguration> configurations = new ArrayList<>( reloaded.size() );
+        int added = 0;
+        int changed = 0;
+        boolean newSelectors = false;
+        for( JvmInstanceConfiguration configuration : reloaded ) {
+            JvmInstanceConfiguration running = claim( unclaimed, configuration );
+            if( running == null ) {
+                configurations.add( configuration );
+                added++;
+                newSelectors |= configuration.getJvmSelector() != null;
+            } else if( running.isEquivalentTo( configuration ) ) {
+                configurations.add( running );
+                replacements.put( running, running );
+            } else {
+                configuration.setMetricSet( reuseQueries( running.getMetricSet(), configuration.getMetricSet() ) );
+                configurations.add( configuration );
+                replacements.put( running, configuration );
+                changed++;
+            }
+        }
+        this.configurations = ImmutableList.copyOf( configurations );
+        this.added = added;
+        this.changed = changed;
+        this.newSelectors = newSelectors;
+
+        List<JvmInstanceConfiguration> previousSelectors = withSelectors( previous );
+        List<JvmInstanceConfiguration> currentSelectors = withSelectors( configurations );
+        for( int i = 0; i < previousSelectors.size() && i < currentSelectors.size(); i++ ) {
+            if( replacements.get( previousSelectors.get( i ) ) != currentSelectors.get( i ) ) {
+                break;
+            }
+            stableSelections.add( previousSelectors.get( i ) );
+        }
+        for( JvmInstanceConfiguration running : replacements.keySet() ) {
+            if( running.getJvmSelector() == null ) {
+                stableSelections.add( running );
+            }
+        }
+    }
+
+    public static ConfigurationDiff compute( List<JvmInstanceConfiguration> previous, List<JvmInstanceConfiguration> reloaded ) {
+        return new ConfigurationDiff( checkNotNull( previous, "previous is required" ), checkNotNull( reloaded, "reloaded is required" ) );
+    }
+
+    private static JvmInstanceConfiguration claim( List<JvmInstanceConfiguration> unclaimed, JvmInstanceConfiguration configuration ) {
+        for( int i = 0; i < unclaimed.size(); i++ ) {
+            if( unclaimed.get( i ).hasSameSelection( configuration ) ) {
+                return unclaimed.remove( i );
+            }
+        }
+        return null;
+    }
+
+    private static List<MetricQuery> reuseQueries( List<MetricQuery> running, List<MetricQuery> reloaded ) {
+        if( running == null || reloaded == null ) {
+            return reloaded;
+        }
+        List<MetricQuery> unclaimed = new ArrayList<>( running );
+        List<MetricQuery> merged = new ArrayList<>( reloaded.size() );
+        for( MetricQuery query : reloaded ) {
+            MetricQuery match = null;
+            for( int i = 0; i < unclaimed.size(); i++ ) {
+                if( unclaimed.get( i ).isEquivalentTo( query ) ) {
+                    match = unclaimed.remove( i );
+                    break;
+                }
+            }
+            merged.add( match == null ? query : match );
+        }
+        return ImmutableList.copyOf( merged );
+    }
+
+    private static List<JvmInstanceConfiguration> withSelectors( List<JvmInstanceConfiguration> configurations ) {
+        List<JvmInstanceConfiguration> selectors = new ArrayList<>();
+        for( JvmInstanceConfiguration configuration : configurations ) {
+            if( configuration.getJvmSelector() != null ) {
+                selectors.add( configuration );
+            }
+        }
+        return selectors;
+    }
+
+    /**
+     * @return the configuration to run from now on, with retained entries in place of their reloaded counterparts
+     */
+    public List<JvmInstanceConfiguration> getConfigurations() {
+        return configurations;
+    }
+
+    /**
+     * @return what a target matched to {@code running} is matched to under the reloaded configuration - {@code running} itself if
+     * nothing about it changed - or null if the target has to be matched again
+     */
+    public JvmInstanceConfiguration replacementFor( JvmInstanceConfiguration running ) {
+        return stableSelections.contains( running ) ? replacements.get( running ) : null;
+    }
+
+    /**
+     * @return true if a target that matched none of the running selectors might match one of the reloaded ones
+     */
+    public boolean hasNewSelectors() {
+        return newSelectors;
+    }
+
+    public boolean isEmpty() {
+        return added == 0 && changed == 0 && previous.size() == configurations.size() && stableSelections.size() == previous.size();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "added", added ).add( "removed", previous.size() - replacements.size() ).add( "changed", changed )
+          .add( "unchanged", replacements.size() - changed ).add( "reordered", stableSelections.size() < replacements.size() ).toString();
+    }
+}
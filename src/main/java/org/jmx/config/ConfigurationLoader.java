@@ -35,6 +35,9 @@ public class ConfigurationLoader {
             }
 
             List<MetricQuery> coreJvmMetrics = loadMetricSet( new ClassPathResource( "/jvm-core-metrics.json" ) );
+            for( MetricQuery query : coreJvmMetrics ) {
+                query.setCore( true );
+            }
 
             List<JvmInstanceConfiguration> allConfigurations = new ArrayList<>( );
             List<JvmInstanceConfiguration> jvmInstanceConfigurations = loadJvmInstanceConfig( primaryConfig );
@@ -0,0 +1,135 @@
+package org.jmx.config;
+
+import static com.google.common.base.Preconditions.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * Watches the primary configuration file and the metric sets it references, and hands a freshly loaded configuration to a
+ * listener after any of them changes. Editors tend to write a file several times or replace it by renaming, so events are
+ * collected until the files have been quiet for {@code quietPeriodMs} before reloading once. A configuration that fails to load
+ * is logged and otherwise ignored, leaving the running one in effect.
+ */
+public final class ConfigurationWatcher implements AutoCloseable {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ConfigurationLoader configurationLoader;
+    private final Resource primaryConfig;
+    private final long quietPeriodMs;
+    private final Consumer<List<JvmInstanceConfiguration>> listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread thread;
+    private volatile Set<Path> watchedFiles;
+
+    public ConfigurationWatcher( ConfigurationLoader configurationLoader, Resource primaryConfig, List<JvmInstanceConfiguration> jvmInstanceConfigurations,
+      long quietPeriodMs, Consumer<List<JvmInstanceConfiguration>> listener ) throws IOException {
+        this.configurationLoader = checkNotNull( configurationLoader, "configurationLoader is required" );
+        this.primaryConfig = checkNotNull( primaryConfig, "primaryConfig is required" );
+        checkArgument( quietPeriodMs > 0, "quietPeriodMs must be > 0: %s", quietPeriodMs );
+        this.quietPeriodMs = quietPeriodMs;
+        this.listener = checkNotNull( listener, "listener is required" );
+        this.watchService = FileSystems.getDefault().newWatchService();
+        watch( jvmInstanceConfigurations );
+        this.thread = new Thread( this::run, "config-watcher" );
+        thread.setDaemon( true );
+    }
+
+    public void start() {
+        thread.start();
+        logger.info( "Watching {} for changes", watchedFiles );
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+
+    private void watch( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) throws IOException {
+        Set<Path> files = new HashSet<>();
+        files.add( pathOf( primaryConfig ) );
+        for( JvmInstanceConfiguration jvmInstanceConfiguration : jvmInstanceConfigurations ) {
+            for( String metricSetRef : jvmInstanceConfiguration.getMetricSetRefs() ) {
+                if( !metricSetRef.startsWith( "builtin:" ) ) {
+                    files.add( pathOf( primaryConfig.createRelative( metricSetRef ) ) );
+                }
+            }
+        }
+
+        // directories rather than files are watched, so that a file replaced by rename is still seen
+        Set<Path> registered = new HashSet<>( directories.values() );
+        for( Path file : files ) {
+            Path directory = file.getParent();
+            if( registered.add( directory ) ) {
+                directories.put( directory.register( watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE ), directory );
+            }
+        }
+        watchedFiles = files;
+    }
+
+    private static Path pathOf( Resource resource ) throws IOException {
+        return resource.getFile().toPath().toAbsolutePath().normalize();
+    }
+
+    private void run() {
+        try {
+            while( !Thread.currentThread().isInterrupted() ) {
+                boolean changed = collect( watchService.take() );
+                WatchKey key;
+                while( (key = watchService.poll( quietPeriodMs, TimeUnit.MILLISECONDS )) != null ) {
+                    changed |= collect( key );
+                }
+                if( changed ) {
+                    reload();
+                }
+            }
+        } catch( InterruptedException | ClosedWatchServiceException e ) {
+            logger.debug( "Stopped watching {}", watchedFiles );
+        }
+    }
+
+    private boolean collect( WatchKey key ) {
+        Path directory = directories.get( key );
+        boolean changed = false;
+        for( WatchEvent<?> event : key.pollEvents() ) {
+            if( event.kind() == OVERFLOW ) {
+                changed = true;
+            } else if( directory != null && watchedFiles.contains( directory.resolve( (Path) event.context() ) ) ) {
+                changed = true;
+            }
+        }
+        if( !key.reset() ) {
+            directories.remove( key );
+        }
+        return changed;
+    }
+
+    private void reload() {
+        try {
+            logger.info( "Configuration changed; reloading {}", primaryConfig );
+            List<JvmInstanceConfiguration> jvmInstanceConfigurations = configurationLoader.loadConfiguration( primaryConfig );
+            watch( jvmInstanceConfigurations );
+            listener.accept( jvmInstanceConfigurations );
+        } catch( Exception e ) {
+            logger.error( "Unable to reload {}; keeping the running configuration", primaryConfig, e );
+        }
+    }
+}
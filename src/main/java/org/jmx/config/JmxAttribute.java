@@ -1,6 +1,7 @@
 package org.jmx.config;
 
 import java.util.List;
+import java.util.Objects;
 
 import com.google.common.base.Splitter;
 
@@ -13,6 +14,7 @@ public final class JmxAttribute {
 
     private String nestedName;
     private String alias;
+    private AliasTemplate aliasTemplate;
 
     public String getName() {
         return name;
@@ -36,6 +38,22 @@ public final class JmxAttribute {
         this.alias = alias;
     }
 
+    public AliasTemplate getAliasTemplate() {
+        return aliasTemplate;
+    }
+
+    /**
+     * @return true if {@code other} reads the same attribute and reports it under the same alias and type
+     */
+    boolean isEquivalentTo( JmxAttribute other ) {
+        return Objects.equals( name, other.name ) && Objects.equals( nestedName, other.nestedName ) && Objects.equals( alias, other.alias )
+          && type == other.type;
+    }
+
+    void compileAlias() {
+        this.aliasTemplate = AliasTemplate.compile( alias, name, nestedName );
+    }
+
     public MetricType getType() {
         return type;
     }
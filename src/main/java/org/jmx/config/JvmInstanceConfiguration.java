@@ -1,6 +1,7 @@
 package org.jmx.config;
 
 import java.util.List;
+import java.util.Objects;
 
 import org.springframework.expression.Expression;
 
@@ -28,6 +29,15 @@ public final class JvmInstanceConfiguration {
     }
 
     private List<MetricQuery> metricSet;
+    private List<MetricQuery> applicationMetricSet;
+
+    /**
+     * @return the metric set without the core JVM metrics, for when those are read from somewhere other than JMX; the same list
+     * instance until the metric set is replaced
+     */
+    public List<MetricQuery> getApplicationMetricSet() {
+        return applicationMetricSet;
+    }
 
     public Expression getJvmSelector() {
         return jvmSelector;
@@ -63,5 +73,51 @@ public final class JvmInstanceConfiguration {
 
     public void setMetricSet( List<MetricQuery> metricSet ) {
         this.metricSet = metricSet;
+        if( metricSet == null ) {
+            this.applicationMetricSet = null;
+        } else {
+            ImmutableList.Builder<MetricQuery> applicationMetricSet = ImmutableList.builder();
+            for( MetricQuery query : metricSet ) {
+                if( !query.isCore() ) {
+                    applicationMetricSet.add( query );
+                }
+            }
+            this.applicationMetricSet = applicationMetricSet.build();
+        }
+    }
+
+    /**
+     * @return true if {@code other} selects and names JVMs exactly as this configuration does, so that a connection made for one
+     * can serve the other
+     */
+    public boolean hasSameSelection( JvmInstanceConfiguration other ) {
+        return Objects.equals( expressionString( jvmSelector ), expressionString( other.jvmSelector ) )
+          && Objects.equals( expressionString( jvmNameExtractor ), expressionString( other.jvmNameExtractor ) )
+          && Objects.equals( jmxPortRange, other.jmxPortRange );
+    }
+
+    /**
+     * @return true if {@code other} has the same selection, tags and metric set
+     */
+    public boolean isEquivalentTo( JvmInstanceConfiguration other ) {
+        if( !hasSameSelection( other ) || !Objects.equals( tags, other.tags ) || !Objects.equals( metricSetRefs, other.metricSetRefs ) ) {
+            return false;
+        }
+        if( metricSet == null || other.metricSet == null ) {
+            return metricSet == other.metricSet;
+        }
+        if( metricSet.size() != other.metricSet.size() ) {
+            return false;
+        }
+        for( int i = 0; i < metricSet.size(); i++ ) {
+            if( !metricSet.get( i ).isEquivalentTo( other.metricSet.get( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String expressionString( Expression expression ) {
+        return expression == null ? null : expression.getExpressionString();
     }
 }
@@ -2,6 +2,7 @@ package org.jmx.config;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import javax.management.ObjectName;
@@ -37,10 +38,23 @@ public class MetricQuery {
     }
 
     private String[] uniqueAttributeNames;
+    private boolean core;
+
+    /**
+     * @return true if this query comes from the built-in core JVM metric set
+     */
+    public boolean isCore() {
+        return core;
+    }
+
+    void setCore( boolean core ) {
+        this.core = core;
+    }
 
     public void index() {
         Multimap<String, JmxAttribute> nameIdx = ArrayListMultimap.create();
         for( JmxAttribute attribute : attributes ) {
+            attribute.compileAlias();
             nameIdx.put( attribute.getName(), attribute );
         }
         this.nameIdx = nameIdx;
@@ -51,4 +65,19 @@ public class MetricQuery {
     public Collection<JmxAttribute> findAttributesFor( String name ) {
         return nameIdx.get( name );
     }
+
+    /**
+     * @return true if {@code other} queries the same pattern for the same attributes, in the same order
+     */
+    public boolean isEquivalentTo( MetricQuery other ) {
+        if( core != other.core || !Objects.equals( pattern, other.pattern ) || attributes.size() != other.attributes.size() ) {
+            return false;
+        }
+        for( int i = 0; i < attributes.size(); i++ ) {
+            if( !attributes.get( i ).isEquivalentTo( other.attributes.get( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
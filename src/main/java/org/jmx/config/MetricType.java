@@ -1,5 +1,5 @@
 package org.jmx.config;
 
 public enum MetricType {
-    GAUGE,COUNTER
+    GAUGE,COUNTER,RATE
 }
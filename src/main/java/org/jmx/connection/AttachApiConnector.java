@@ -3,17 +3,23 @@ package org.jmx.connection;
 import static com.google.common.base.Preconditions.*;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import org.jmx.JmxUtils;
 import org.jmx.config.JvmInstanceConfiguration;
+import org.jmx.perfdata.PerfData;
+import org.jmx.perfdata.PerfDataLocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.expression.EvaluationContext;
@@ -26,28 +32,72 @@ import com.google.common.base.Throwables;
 import com.sun.tools.attach.VirtualMachine;
 import com.sun.tools.attach.VirtualMachineDescriptor;
 
+/**
+ * Connects to a local JVM found through the attach API. A JVM whose local management agent is running publishes the agent's
+ * connector address and its command line in its performance data file, so those are read from there first; attaching - which
+ * starts an attach listener thread in the target and may load the management agent into it - is the fallback for JVMs that
+ * publish no address. System properties then come from the Runtime MBean over the new connection.
+ * <p>
+ * What discovery yields is kept for the lifetime of the JVM, identified by {@link JvmIdentity}. Reconnects go straight to the
+ * cached address, and the selectors are only evaluated again, against the cached properties, when the configuration has been
+ * reloaded.
+ */
 public final class AttachApiConnector implements VirtualMachineConnector {
+    private static final String CONNECTOR_ADDRESS_COUNTER = "sun.management.JMXConnectorServer.address";
+    private static final String JAVA_COMMAND_COUNTER = "sun.rt.javaCommand";
     private final VirtualMachineDescriptor descriptor;
+    private final JvmIdentity identity;
     private final Logger logger = LoggerFactory.getLogger( getClass() );
-    private final List<JvmInstanceConfiguration> jvmInstanceConfigurations;
+    private volatile List<JvmInstanceConfiguration> jvmInstanceConfigurations;
+    private volatile AttachResult attachResult;
+    private volatile Classification classification;
 
     public AttachApiConnector( VirtualMachineDescriptor descriptor, List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
+        this( descriptor, JvmIdentity.of( descriptor ), jvmInstanceConfigurations );
+    }
+
+    public AttachApiConnector( VirtualMachineDescriptor descriptor, JvmIdentity identity, List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
         this.descriptor = checkNotNull( descriptor, "descriptor is required" );
+        this.identity = checkNotNull( identity, "identity is required" );
+        this.jvmInstanceConfigurations = checkNotNull( jvmInstanceConfigurations, "jvmInstanceConfigurations is required" );
+    }
+
+    /**
+     * Applies a reloaded configuration to connections made from now on.
+     */
+    public void setJvmInstanceConfigurations( List<JvmInstanceConfiguration> jvmInstanceConfigurations ) {
         this.jvmInstanceConfigurations = checkNotNull( jvmInstanceConfigurations, "jvmInstanceConfigurations is required" );
     }
 
-    private JvmInstanceConfiguration resolveConfiguration( VirtualMachine vm, EvaluationContext ctx ) {
+    public JvmIdentity getIdentity() {
+        return identity;
+    }
+
+    public String getPid() {
+        return descriptor.id();
+    }
+
+    /**
+     * @return what the last connection learned about this JVM, classified against the current configuration, or null if it has
+     * not been connected to yet; lets the JVM's tags and metric set be known without holding a connection open
+     */
+    public ConnectionMetaData getConnectionMetaData() {
+        AttachResult attachResult = this.attachResult;
+        return attachResult == null || attachResult.systemProperties == null ? null : classify( attachResult );
+    }
+
+    private JvmInstanceConfiguration resolveConfiguration( List<JvmInstanceConfiguration> jvmInstanceConfigurations, EvaluationContext ctx ) {
         for( JvmInstanceConfiguration jvmInstanceConfiguration : jvmInstanceConfigurations ) {
             if( jvmInstanceConfiguration.getJvmSelector() == null ) {
                 continue;
             }
             logger.debug( "Evaluating {}", jvmInstanceConfiguration.getJvmSelector().getExpressionString() );
-            if( jvmInstanceConfiguration.getJvmSelector().getValue( ctx, Boolean.class ) ) {
-                logger.info( "Matched {} to {}", jvmInstanceConfiguration.getJvmSelector().getExpressionString(), vm );
+            if( Boolean.TRUE.equals( Expressions.evaluate( jvmInstanceConfiguration.getJvmSelector(), ctx, Boolean.class ) ) ) {
+                logger.info( "Matched {} to {}", jvmInstanceConfiguration.getJvmSelector().getExpressionString(), descriptor );
                 return jvmInstanceConfiguration;
             }
         }
-        logger.debug( "No match for {}", vm );
+        logger.debug( "No match for {}", descriptor );
         return null;
     }
 
@@ -65,53 +115,162 @@ public final class AttachApiConnector implements VirtualMachineConnector {
             return false;
         }
         AttachApiConnector that = (AttachApiConnector) o;
-        return Objects.equal( descriptor, that.descriptor );
+        return Objects.equal( identity, that.identity );
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode( descriptor );
+        return Objects.hashCode( identity );
     }
 
     @Override
-    public JmxConnection connect() {
+    public JmxConnection connect( ConnectionTimeouts timeouts ) {
         try {
-            com.sun.tools.attach.VirtualMachine vm = com.sun.tools.attach.VirtualMachine.attach( descriptor );
-
             Stopwatch sw = Stopwatch.createStarted();
-            // TODO - timeout
-            // https://community.oracle.com/blogs/emcmanus/2007/05/23/making-jmx-connection-timeout
 
-            JMXServiceURL jmxUrl = JmxUtils.determineServiceUrl( vm );
-            logger.info( "Connecting to JVM {} via {}", descriptor, jmxUrl );
+            AttachResult attachResult = this.attachResult;
+            if( attachResult == null ) {
+                attachResult = readPerfData();
+                if( attachResult == null ) {
+                    attachResult = attach( timeouts );
+                    logger.info( "Connecting to JVM {} via {}", descriptor, attachResult.jmxUrl );
+                } else {
+                    logger.info( "Connecting to JVM {} via {} published in its performance data", descriptor, attachResult.jmxUrl );
+                }
+                this.attachResult = attachResult;
+            } else {
+                logger.info( "Reconnecting to JVM {} via {}", descriptor, attachResult.jmxUrl );
+            }
 
-            JMXConnector connector = JMXConnectorFactory.connect( jmxUrl );
+            JMXConnector connector;
+            try {
+                connector = timeouts.connect( attachResult.jmxUrl );
+            } catch( Exception e ) {
+                // the address outlives the connection only as long as the JVM's management agent does; discover it again next time
+                this.attachResult = null;
+                throw e;
+            }
             final MBeanServerConnection mbeanServerConnection = connector.getMBeanServerConnection();
 
+            if( attachResult.systemProperties == null ) {
+                try {
+                    Properties systemProperties = timeouts.call( () -> readSystemProperties( mbeanServerConnection ), timeouts.getRequestTimeoutMs(),
+                      "Read system properties of " + descriptor );
+                    attachResult = new AttachResult( attachResult.jmxUrl, attachResult.appArgs, systemProperties );
+                    this.attachResult = attachResult;
+                } catch( Exception e ) {
+                    timeouts.closeQuietly( connector );
+                    throw e;
+                }
+            }
+            ConnectionMetaData connectionMetaData = classify( attachResult );
+
             sw.stop();
             logger.info( "Connected to '{}' in {}ms", descriptor, sw.elapsed( TimeUnit.MILLISECONDS ) );
 
-
-            return new JmxConnection( connector, mbeanServerConnection, createConnectionMetaData( vm ) );
+            return new JmxConnection( connector, mbeanServerConnection, connectionMetaData, timeouts );
         } catch( Exception e ) {
             throw Throwables.propagate( e );
         }
     }
 
-    private ConnectionMetaData createConnectionMetaData( VirtualMachine vm ) throws IOException {
-        String appArgs = vm.getAgentProperties().getProperty( "sun.java.command" );
-        Properties systemProperties = vm.getSystemProperties();
+    /**
+     * @return the connector address and command line published in the JVM's performance data, or null if it publishes no address
+     */
+    private AttachResult readPerfData() {
+        Path file = PerfDataLocator.find( descriptor.id() );
+        if( file == null ) {
+            return null;
+        }
+        try {
+            PerfData perfData = PerfData.open( file );
+            String address = perfData.getString( CONNECTOR_ADDRESS_COUNTER );
+            if( address == null ) {
+                logger.debug( "{} publishes no JMX connector address; attaching", descriptor );
+                return null;
+            }
+            return new AttachResult( new JMXServiceURL( address ), perfData.getString( JAVA_COMMAND_COUNTER ), null );
+        } catch( IOException e ) {
+            logger.debug( "Unable to read the performance data of {}; attaching", descriptor, e );
+            return null;
+        }
+    }
+
+    private static Properties readSystemProperties( MBeanServerConnection mbeanServerConnection ) throws Exception {
+        TabularData table = (TabularData) mbeanServerConnection.getAttribute( new ObjectName( ManagementFactory.RUNTIME_MXBEAN_NAME ), "SystemProperties" );
+        Properties systemProperties = new Properties();
+        for( Object row : table.values() ) {
+            CompositeData property = (CompositeData) row;
+            systemProperties.setProperty( (String) property.get( "key" ), (String) property.get( "value" ) );
+        }
+        return systemProperties;
+    }
+
+    private AttachResult attach( ConnectionTimeouts timeouts ) throws Exception {
+        // an attach that completes after the timeout has fired is detached as soon as it does
+        VirtualMachine vm = timeouts.call( () -> VirtualMachine.attach( descriptor ), timeouts.getAttachTimeoutMs(), "Attach to " + descriptor,
+          this::detachQuietly );
+        try {
+            return timeouts.call( () -> new AttachResult( JmxUtils.determineServiceUrl( vm ), vm.getAgentProperties().getProperty( "sun.java.command" ),
+              vm.getSystemProperties() ), timeouts.getAttachTimeoutMs(), "Read agent properties of " + descriptor );
+        } finally {
+            detachQuietly( vm );
+        }
+    }
+
+    private void detachQuietly( VirtualMachine vm ) {
+        try {
+            vm.detach();
+        } catch( IOException e ) {
+            logger.debug( "Error detaching from {}", descriptor, e );
+        }
+    }
+
+    private ConnectionMetaData classify( AttachResult attachResult ) {
+        List<JvmInstanceConfiguration> jvmInstanceConfigurations = this.jvmInstanceConfigurations;
+        Classification classification = this.classification;
+        if( classification == null || classification.jvmInstanceConfigurations != jvmInstanceConfigurations ) {
+            classification = new Classification( jvmInstanceConfigurations, createConnectionMetaData( jvmInstanceConfigurations, attachResult ) );
+            this.classification = classification;
+        }
+        return classification.connectionMetaData;
+    }
+
+    private static final class AttachResult {
+        private final JMXServiceURL jmxUrl;
+        private final String appArgs;
+        // null until read over the connection when discovery did not attach
+        private final Properties systemProperties;
+
+        private AttachResult( JMXServiceURL jmxUrl, String appArgs, Properties systemProperties ) {
+            this.jmxUrl = jmxUrl;
+            this.appArgs = appArgs;
+            this.systemProperties = systemProperties;
+        }
+    }
+
+    private static final class Classification {
+        private final List<JvmInstanceConfiguration> jvmInstanceConfigurations;
+        private final ConnectionMetaData connectionMetaData;
+
+        private Classification( List<JvmInstanceConfiguration> jvmInstanceConfigurations, ConnectionMetaData connectionMetaData ) {
+            this.jvmInstanceConfigurations = jvmInstanceConfigurations;
+            this.connectionMetaData = connectionMetaData;
+        }
+    }
+
+    private ConnectionMetaData createConnectionMetaData( List<JvmInstanceConfiguration> jvmInstanceConfigurations, AttachResult attachResult ) {
         EvaluationContext ctx = new StandardEvaluationContext();
-        ctx.setVariable( "appArgs", appArgs );
-        ctx.setVariable( "systemProps",systemProperties );
+        ctx.setVariable( "appArgs", attachResult.appArgs );
+        ctx.setVariable( "systemProps", attachResult.systemProperties );
 
-        JvmInstanceConfiguration jvmInstanceConfiguration = resolveConfiguration( vm, ctx  );
+        JvmInstanceConfiguration jvmInstanceConfiguration = resolveConfiguration( jvmInstanceConfigurations, ctx );
 
         String jvmInstanceName = null;
         if( jvmInstanceConfiguration != null ) {
-            jvmInstanceName = jvmInstanceConfiguration.getJvmNameExtractor().getValue( ctx, String.class );
+            jvmInstanceName = Expressions.evaluate( jvmInstanceConfiguration.getJvmNameExtractor(), ctx, String.class );
         }
 
-        return new ConnectionMetaData( appArgs, systemProperties, ctx, jvmInstanceConfiguration, jvmInstanceName );
+        return new ConnectionMetaData( attachResult.appArgs, attachResult.systemProperties, ctx, jvmInstanceConfiguration, jvmInstanceName );
     }
 }
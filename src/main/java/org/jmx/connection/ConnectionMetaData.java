@@ -12,6 +12,7 @@ import org.springframework.expression.EvaluationContext;
 public class ConnectionMetaData {
     private final String appArgs;
     private final Properties systemProperties;
+    private final String jvmInstanceName;
 
     public String[] getJvmInstanceTags() {
         return jvmInstanceTags;
@@ -45,6 +46,7 @@ public class ConnectionMetaData {
         this.systemProperties = systemProperties;
         this.ctx = ctx;
         this.jvmInstanceConfiguration = jvmInstanceConfiguration;
+        this.jvmInstanceName = jvmInstanceName;
 
         if( jvmInstanceName != null && jvmInstanceConfiguration != null ) {
             List<String> tags = new ArrayList<>();
@@ -55,4 +57,12 @@ public class ConnectionMetaData {
             jvmInstanceTags = new String[ 0 ];
         }
     }
+
+    /**
+     * @return the same JVM described by a reloaded configuration that selects and names it identically
+     */
+    public ConnectionMetaData withConfiguration( JvmInstanceConfiguration jvmInstanceConfiguration ) {
+        checkNotNull( jvmInstanceConfiguration, "jvmInstanceConfiguration is required" );
+        return new ConnectionMetaData( appArgs, systemProperties, ctx, jvmInstanceConfiguration, jvmInstanceName );
+    }
 }
@@ -0,0 +1,33 @@
+package org.jmx.connection;
+
+/**
+ * Receives the latency of every remote operation the connection layer performs. Implementations must be cheap and thread safe;
+ * they are called on the poller threads.
+ */
+public interface ConnectionTelemetry {
+    ConnectionTelemetry NONE = new ConnectionTelemetry() {
+        @Override
+        public void connected( long elapsedNanos ) {
+        }
+
+        @Override
+        public void queriedNames( long elapsedNanos ) {
+        }
+
+        @Override
+        public void readAttributes( String target, long elapsedNanos ) {
+        }
+    };
+
+    /**
+     * A new connection was established, including attaching to the JVM where that was needed.
+     */
+    void connected( long elapsedNanos );
+
+    void queriedNames( long elapsedNanos );
+
+    /**
+     * @param target identifies the polled JVM by its tags
+     */
+    void readAttributes( String target, long elapsedNanos );
+}
@@ -0,0 +1,152 @@
+package org.jmx.connection;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Runs blocking attach, connect and MBean server calls on a dedicated pool so that the calling poller thread gives up after a
+ * bounded time instead of hanging on a wedged JVM. The pool is expected to be bounded: a call it rejects fails with
+ * {@link RejectedExecutionException} like any other failed call.
+ * <p>
+ * Maintenance work - closing connectors, handling evicted connections and reconnecting in the background - runs on a separate
+ * executor. Such work makes remote calls of its own, which must never queue behind it in the pool it occupies.
+ */
+public final class ConnectionTimeouts {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ListeningExecutorService executor;
+    private final ExecutorService maintenanceExecutor;
+    private final long connectTimeoutMs;
+    private final long attachTimeoutMs;
+    private final long requestTimeoutMs;
+    private final ConnectionTelemetry telemetry;
+
+    public ConnectionTimeouts( ExecutorService executor, ExecutorService maintenanceExecutor, long connectTimeoutMs, long attachTimeoutMs,
+      long requestTimeoutMs, ConnectionTelemetry telemetry ) {
+        this.executor = MoreExecutors.listeningDecorator( checkNotNull( executor, "executor is required" ) );
+        this.maintenanceExecutor = checkNotNull( maintenanceExecutor, "maintenanceExecutor is required" );
+        checkArgument( connectTimeoutMs > 0, "connectTimeoutMs must be > 0: %s", connectTimeoutMs );
+        checkArgument( attachTimeoutMs > 0, "attachTimeoutMs must be > 0: %s", attachTimeoutMs );
+        checkArgument( requestTimeoutMs > 0, "requestTimeoutMs must be > 0: %s", requestTimeoutMs );
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.attachTimeoutMs = attachTimeoutMs;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.telemetry = checkNotNull( telemetry, "telemetry is required" );
+    }
+
+    public long getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public long getAttachTimeoutMs() {
+        return attachTimeoutMs;
+    }
+
+    public long getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+
+    ConnectionTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    ExecutorService getMaintenanceExecutor() {
+        return maintenanceExecutor;
+    }
+
+    public <T> T call( Callable<T> callable, long timeoutMs, Object description ) throws Exception {
+        return call( callable, timeoutMs, description, null );
+    }
+
+    /**
+     * @param lateResult if not null, the call is left to finish when it times out rather than interrupted, and is handed whatever
+     * it produces so that it can be released instead of leaked
+     */
+    public <T> T call( Callable<T> callable, long timeoutMs, Object description, Consumer<? super T> lateResult ) throws Exception {
+        ListenableFuture<T> future = executor.submit( callable );
+        try {
+            return future.get( timeoutMs, TimeUnit.MILLISECONDS );
+        } catch( TimeoutException e ) {
+            abandon( future, lateResult );
+            throw new JmxTimeoutException( String.format( "%s timed out after %sms", description, timeoutMs ) );
+        } catch( InterruptedException e ) {
+            abandon( future, lateResult );
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof Exception ) {
+                throw (Exception) e.getCause();
+            }
+            throw new RuntimeException( e.getCause() );
+        }
+    }
+
+    private static <T> void abandon( ListenableFuture<T> future, Consumer<? super T> lateResult ) {
+        if( lateResult == null ) {
+            future.cancel( true );
+            return;
+        }
+        Futures.addCallback( future, new FutureCallback<T>() {
+            @Override
+            public void onSuccess( T result ) {
+                lateResult.accept( result );
+            }
+
+            @Override
+            public void onFailure( Throwable t ) {
+            }
+        } );
+    }
+
+    public JMXConnector connect( JMXServiceURL jmxUrl ) throws Exception {
+        // interrupting a socket connect is unreliable; let it finish and close whatever it produces instead of leaking it
+        return call( () -> JMXConnectorFactory.connect( jmxUrl ), connectTimeoutMs, "Connect to " + jmxUrl, this::closeQuietly );
+    }
+
+    public void closeQuietly( JMXConnector connector ) {
+        // closing a connector whose socket is wedged can itself block, so only do it on the caller's thread once shut down
+        try {
+            maintenanceExecutor.execute( () -> close( connector ) );
+        } catch( RejectedExecutionException e ) {
+            close( connector );
+        }
+    }
+
+    private void close( JMXConnector connector ) {
+        try {
+            connector.close();
+        } catch( Exception e ) {
+            logger.debug( "Error closing {}", connector, e );
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "connectTimeoutMs", connectTimeoutMs ).add( "attachTimeoutMs", attachTimeoutMs ).add(
+          "requestTimeoutMs", requestTimeoutMs ).toString();
+    }
+}
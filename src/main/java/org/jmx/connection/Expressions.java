@@ -0,0 +1,25 @@
+package org.jmx.connection;
+
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+/**
+ * Evaluates the SpEL expressions of a {@link org.jmx.config.JvmInstanceConfiguration}. The SpEL compiler needs the types seen by an
+ * interpreted evaluation before it can generate bytecode, so each expression is compiled right after its first evaluation rather
+ * than after the compiler's default threshold of one hundred, which a selector evaluated once per JVM would rarely reach.
+ * Expressions the compiler cannot handle stay interpreted.
+ */
+final class Expressions {
+    private Expressions() {
+        throw new AssertionError( "Cannot instantiate " + getClass() );
+    }
+
+    static <T> T evaluate( Expression expression, EvaluationContext ctx, Class<T> type ) {
+        T value = expression.getValue( ctx, type );
+        if( expression instanceof SpelExpression ) {
+            ((SpelExpression) expression).compileExpression();
+        }
+        return value;
+    }
+}
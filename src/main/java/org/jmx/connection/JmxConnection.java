@@ -3,34 +3,98 @@ package org.jmx.connection;
 import static com.google.common.base.Preconditions.*;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
+import javax.management.relation.MBeanServerNotificationFilter;
+import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
 
 import org.jmx.config.JvmInstanceConfiguration;
+import org.jmx.config.MetricQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
-import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Sets;
 
 public final class JmxConnection implements AutoCloseable {
+    static final long DEFAULT_QUERY_RESYNC_MS = 300000;
 
-    private final LoadingCache<ObjectName, Set<ObjectName>> queryNamesCache = CacheBuilder.newBuilder().maximumSize( 1000 ).build(
-      new CacheLoader<ObjectName, Set<ObjectName>>() {
-          @Override
-          public Set<ObjectName> load( ObjectName pattern ) throws Exception {
-              return mbeanServerConnection.queryNames( pattern, null );
-          }
-      } );
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final ConcurrentMap<ObjectName, Set<ObjectName>> queryNamesCache = new ConcurrentHashMap<>();
+    private final ObjectNameIndex index = new ObjectNameIndex();
+    private final Object indexLock = new Object();
+    private volatile boolean indexed;
+    private final AtomicLong queryGeneration = new AtomicLong();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    // whether the registration listener is in place; until it is, names are re-queried as soon as one is found missing
+    private volatile boolean listening;
+    private volatile long queryResyncMs = DEFAULT_QUERY_RESYNC_MS;
+    private volatile long nextResyncMs;
+
+    private final NotificationListener registrationListener = ( notification, handback ) -> {
+        if( !(notification instanceof MBeanServerNotification) ) {
+            return;
+        }
+        ObjectName mbeanName = ((MBeanServerNotification) notification).getMBeanName();
+        boolean changed = false;
+        if( MBeanServerNotification.REGISTRATION_NOTIFICATION.equals( notification.getType() ) ) {
+            // the index alone does not change any query result
+            index.add( mbeanName );
+            for( Map.Entry<ObjectName, Set<ObjectName>> entry : queryNamesCache.entrySet() ) {
+                if( entry.getKey().apply( mbeanName ) ) {
+                    changed |= entry.getValue().add( mbeanName );
+                }
+            }
+        } else if( MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals( notification.getType() ) ) {
+            index.remove( mbeanName );
+            for( Set<ObjectName> names : queryNamesCache.values() ) {
+                changed |= names.remove( mbeanName );
+            }
+        }
+        if( changed ) {
+            logger.debug( "{} {}", notification.getType(), mbeanName );
+            queryGeneration.incrementAndGet();
+        }
+    };
+
+    private final NotificationListener connectionListener = ( notification, handback ) -> {
+        if( JMXConnectionNotification.NOTIFS_LOST.equals( notification.getType() ) ) {
+            logger.debug( "Lost MBean registration notifications from {}; resyncing", getConnector() );
+            resync();
+        } else if( JMXConnectionNotification.FAILED.equals( notification.getType() )
+          || JMXConnectionNotification.CLOSED.equals( notification.getType() ) ) {
+            broken = true;
+        }
+    };
 
     JMXConnector getConnector() {
         return connector;
@@ -42,21 +106,290 @@ public final class JmxConnection implements AutoCloseable {
         return connectionMetaData;
     }
 
-    private final ConnectionMetaData connectionMetaData;
+    private volatile ConnectionMetaData connectionMetaData;
+
+    /**
+     * Swaps in a reloaded configuration that selects and names this JVM as before. Cached query results for patterns that are
+     * still in the metric set are kept; those for patterns that left it are dropped.
+     */
+    public void rebind( JvmInstanceConfiguration jvmInstanceConfiguration ) {
+        ConnectionMetaData rebound = connectionMetaData.withConfiguration( jvmInstanceConfiguration );
+        Set<ObjectName> patterns = new HashSet<>();
+        for( MetricQuery metricQuery : jvmInstanceConfiguration.getMetricSet() ) {
+            patterns.add( metricQuery.getPattern() );
+        }
+        queryNamesCache.keySet().retainAll( patterns );
+        target = targetFor( connector, rebound );
+        connectionMetaData = rebound;
+    }
 
+    /**
+     * Sets how often the ObjectName index is reloaded in full, from now on.
+     */
+    void setQueryResyncMs( long queryResyncMs ) {
+        checkArgument( queryResyncMs > 0, "queryResyncMs must be > 0: %s", queryResyncMs );
+        this.queryResyncMs = queryResyncMs;
+        this.nextResyncMs = System.currentTimeMillis() + queryResyncMs;
+    }
+
+    /**
+     * The MBean server is asked for all of its ObjectNames once; patterns are then matched locally against an
+     * {@link ObjectNameIndex} of them, and the results cached. Both are kept current from the MBean server delegate's
+     * registration notifications, with a full resync every {@link #setQueryResyncMs(long) queryResyncMs} in case notifications
+     * were missed. If the server refuses the subscription, the names are re-queried whenever an MBean is found to be gone, and
+     * subscribing is tried again at each resync.
+     */
     public Set<ObjectName> queryNames( ObjectName pattern ) throws IOException {
+        long nowMs = System.currentTimeMillis();
+        if( nowMs >= nextResyncMs ) {
+            nextResyncMs = nowMs + queryResyncMs;
+            if( !listening ) {
+                subscribed.set( false );
+            }
+            resync();
+        }
+        // subscribed before loading so that notifications arriving while the load is in flight are not lost
+        subscribe();
+        loadIndex();
+
+        // cached under the resolved pattern, which is what registrations are matched against
+        ObjectName resolved = index.resolve( pattern );
+        Set<ObjectName> names = queryNamesCache.get( resolved );
+        if( names == null ) {
+            Set<ObjectName> matches = Sets.newConcurrentHashSet( index.query( resolved ) );
+            names = queryNamesCache.putIfAbsent( resolved, matches );
+            if( names == null ) {
+                names = matches;
+            }
+        }
+        return Collections.unmodifiableSet( names );
+    }
+
+    /**
+     * Subscribes to MBean registrations and loads the ObjectName index ahead of the first {@link #queryNames(ObjectName)} call.
+     */
+    void prefetch() throws IOException {
+        subscribe();
+        loadIndex();
+    }
+
+    private void loadIndex() throws IOException {
+        if( indexed ) {
+            return;
+        }
+        synchronized( indexLock ) {
+            if( indexed ) {
+                return;
+            }
+            try {
+                long startNanos = System.nanoTime();
+                index.clear();
+                index.setDefaultDomain( withDeadline( mbeanServerConnection::getDefaultDomain, "getDefaultDomain" ) );
+                index.addAll( withDeadline( () -> mbeanServerConnection.queryNames( null, null ), "queryNames" ) );
+                timeouts.getTelemetry().queriedNames( System.nanoTime() - startNanos );
+                indexed = true;
+            } catch( Exception e ) {
+                Throwables.propagateIfInstanceOf( e, IOException.class );
+                throw Throwables.propagate( e );
+            }
+        }
+    }
+
+    /**
+     * @return a counter that changes whenever the result of any cached {@link #queryNames(ObjectName)} call may have changed
+     */
+    public long getQueryGeneration() {
+        return queryGeneration.get();
+    }
+
+    /**
+     * Drops an MBean that the server reported as gone from every cached query result. Without registration notifications, the
+     * names are re-queried instead, since others may have come and gone too.
+     */
+    public void forget( ObjectName objectName ) {
+        if( !listening ) {
+            resync();
+            return;
+        }
+        index.remove( objectName );
+        boolean changed = false;
+        for( Set<ObjectName> names : queryNamesCache.values() ) {
+            changed |= names.remove( objectName );
+        }
+        if( changed ) {
+            queryGeneration.incrementAndGet();
+        }
+    }
+
+    private void resync() {
+        indexed = false;
+        queryNamesCache.clear();
+        queryGeneration.incrementAndGet();
+    }
+
+    private void subscribe() {
+        if( !subscribed.compareAndSet( false, true ) ) {
+            return;
+        }
         try {
-            return queryNamesCache.get( pattern );
+            MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+            filter.enableAllObjectNames();
+            withDeadline( () -> {
+                mbeanServerConnection.addNotificationListener( MBeanServerDelegate.DELEGATE_NAME, registrationListener, filter, null );
+                return null;
+            }, "addNotificationListener" );
+            listening = true;
+        } catch( Exception e ) {
+            logger.info( "Unable to subscribe to MBean registrations on {}; re-querying names when an MBean goes missing", connector, e );
+        }
+    }
+
+    public AttributeList getAttributes( ObjectName objectName, String[] attributes ) throws InstanceNotFoundException, IOException, ReflectionException {
+        try {
+            long startNanos = System.nanoTime();
+            AttributeList values = withDeadline( () -> mbeanServerConnection.getAttributes( objectName, attributes ), "getAttributes " + objectName );
+            timeouts.getTelemetry().readAttributes( target, System.nanoTime() - startNanos );
+            return values;
+        } catch( InstanceNotFoundException | IOException | ReflectionException | RuntimeException e ) {
+            throw e;
+        } catch( Exception e ) {
+            throw Throwables.propagate( e );
+        }
+    }
+
+    /**
+     * Reads several MBeans with up to {@code window} getAttributes calls in flight at once on the shared request executor; each
+     * result is handed to {@code handler} on the calling thread as it completes. A window of one reads them one after another.
+     * If any call is still in flight a request timeout after it was submitted the connection is closed, as for a single call.
+     */
+    public <T> void getAttributes( List<T> requests, int window, AttributeRequests<T> handler ) throws IOException, ReflectionException {
+        checkArgument( window > 0, "window must be > 0: %s", window );
+        if( window == 1 || requests.size() <= 1 ) {
+            for( T request : requests ) {
+                try {
+                    handler.completed( request, getAttributes( handler.objectName( request ), handler.attributeNames( request ) ) );
+                } catch( InstanceNotFoundException e ) {
+                    handler.notFound( request );
+                }
+            }
+            return;
+        }
+
+        CompletionService<AttributeRead<T>> completions = new ExecutorCompletionService<>( timeouts.getExecutor() );
+        // submit time of each call in flight, oldest first
+        Map<Future<AttributeRead<T>>, Long> inFlight = new LinkedHashMap<>();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos( timeouts.getRequestTimeoutMs() );
+        Iterator<T> pending = requests.iterator();
+        try {
+            while( pending.hasNext() && inFlight.size() < window ) {
+                inFlight.put( completions.submit( readCall( pending.next(), handler ) ), System.nanoTime() );
+            }
+            while( !inFlight.isEmpty() ) {
+                // wait only until the oldest call is due, so that one hung call cannot hold its slot while the rest drain
+                long oldestNanos = inFlight.values().iterator().next();
+                Future<AttributeRead<T>> done = completions.poll( oldestNanos + timeoutNanos - System.nanoTime(), TimeUnit.NANOSECONDS );
+                if( done == null ) {
+                    broken = true;
+                    timeouts.closeQuietly( connector );
+                    throw new JmxTimeoutException( String.format( "getAttributes call timed out after %sms with %s in flight",
+                      timeouts.getRequestTimeoutMs(), inFlight.size() ) );
+                }
+                inFlight.remove( done );
+                AttributeRead<T> read = done.get();
+                if( read.failure instanceof InstanceNotFoundException ) {
+                    handler.notFound( read.request );
+                } else if( read.failure != null ) {
+                    Throwables.propagateIfInstanceOf( read.failure, IOException.class );
+                    Throwables.propagateIfInstanceOf( read.failure, ReflectionException.class );
+                    throw Throwables.propagate( read.failure );
+                } else {
+                    handler.completed( read.request, read.attributes );
+                }
+                if( pending.hasNext() ) {
+                    inFlight.put( completions.submit( readCall( pending.next(), handler ) ), System.nanoTime() );
+                }
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate( e );
         } catch( ExecutionException e ) {
-            if( e.getCause() instanceof IOException ) {
-                throw (IOException) e.getCause();
+            throw Throwables.propagate( e.getCause() );
+        } finally {
+            for( Future<AttributeRead<T>> future : inFlight.keySet() ) {
+                future.cancel( true );
+            }
+        }
+    }
+
+    private <T> Callable<AttributeRead<T>> readCall( T request, AttributeRequests<T> handler ) {
+        ObjectName objectName = handler.objectName( request );
+        String[] attributeNames = handler.attributeNames( request );
+        return () -> {
+            try {
+                long startNanos = System.nanoTime();
+                AttributeList attributes = mbeanServerConnection.getAttributes( objectName, attributeNames );
+                timeouts.getTelemetry().readAttributes( target, System.nanoTime() - startNanos );
+                return new AttributeRead<>( request, attributes, null );
+            } catch( Exception e ) {
+                return new AttributeRead<>( request, null, e );
             }
+        };
+    }
+
+    /**
+     * What to read for each request of {@link #getAttributes(List, int, AttributeRequests)}, and what to do with the result.
+     */
+    public interface AttributeRequests<T> {
+        ObjectName objectName( T request );
+
+        String[] attributeNames( T request );
+
+        void completed( T request, AttributeList attributes );
+
+        /**
+         * The MBean was unregistered.
+         */
+        void notFound( T request );
+    }
+
+    private static final class AttributeRead<T> {
+        private final T request;
+        private final AttributeList attributes;
+        private final Exception failure;
+
+        private AttributeRead( T request, AttributeList attributes, Exception failure ) {
+            this.request = request;
+            this.attributes = attributes;
+            this.failure = failure;
+        }
+    }
+
+    public MBeanInfo getMBeanInfo( ObjectName objectName ) throws InstanceNotFoundException, IOException, ReflectionException {
+        try {
+            return withDeadline( () -> mbeanServerConnection.getMBeanInfo( objectName ), "getMBeanInfo " + objectName );
+        } catch( InstanceNotFoundException | IOException | ReflectionException | RuntimeException e ) {
+            throw e;
+        } catch( Exception e ) {
             throw Throwables.propagate( e );
         }
     }
 
-    public AttributeList getAttributes( ObjectName objectName, String[] attributes ) throws InstanceNotFoundException, IOException, ReflectionException {
-        return mbeanServerConnection.getAttributes( objectName, attributes );
+    private <T> T withDeadline( Callable<T> call, String description ) throws Exception {
+        try {
+            return timeouts.call( call, timeouts.getRequestTimeoutMs(), description );
+        } catch( JmxTimeoutException e ) {
+            // the remote call may still be blocked on the socket; closing the connector is the only reliable way to release it
+            broken = true;
+            timeouts.closeQuietly( connector );
+            throw e;
+        }
+    }
+
+    /**
+     * @return true once a request on this connection has timed out; the connection has been closed and must not be reused
+     */
+    public boolean isBroken() {
+        return broken;
     }
 
     public MBeanServerConnection getMbeanServerConnection() {
@@ -64,15 +397,46 @@ public final class JmxConnection implements AutoCloseable {
     }
 
     private final MBeanServerConnection mbeanServerConnection;
+    private final ConnectionTimeouts timeouts;
+    private volatile String target;
+    private volatile boolean broken;
 
-    public JmxConnection( JMXConnector connector, MBeanServerConnection mbeanServerConnection, ConnectionMetaData connectionMetaData ) {
+    public JmxConnection( JMXConnector connector, MBeanServerConnection mbeanServerConnection, ConnectionMetaData connectionMetaData,
+      ConnectionTimeouts timeouts ) {
         this.connectionMetaData = connectionMetaData;
+        this.timeouts = checkNotNull( timeouts, "timeouts is required" );
         this.connector = checkNotNull( connector, "connector is required" );
         this.mbeanServerConnection = checkNotNull( mbeanServerConnection, "mbeanServerConnection is required" );
+        this.nextResyncMs = System.currentTimeMillis() + queryResyncMs;
+        this.target = targetFor( connector, connectionMetaData );
+        connector.addConnectionNotificationListener( connectionListener, null, null );
+    }
+
+    private static String targetFor( JMXConnector connector, ConnectionMetaData connectionMetaData ) {
+        return connectionMetaData == null ? connector.toString() : Joiner.on( ',' ).join( connectionMetaData.getJvmInstanceTags() );
     }
 
+    /**
+     * Removes this connection's listeners, then closes the connector.
+     */
     @Override
     public void close() throws Exception {
+        try {
+            connector.removeConnectionNotificationListener( connectionListener );
+        } catch( ListenerNotFoundException e ) {
+            // already gone
+        }
+        if( listening && !broken ) {
+            try {
+                withDeadline( () -> {
+                    mbeanServerConnection.removeNotificationListener( MBeanServerDelegate.DELEGATE_NAME, registrationListener );
+                    return null;
+                }, "removeNotificationListener" );
+                listening = false;
+            } catch( Exception e ) {
+                logger.debug( "Unable to unsubscribe from MBean registrations on {}", connector, e );
+            }
+        }
         connector.close();
     }
 
@@ -1,9 +1,19 @@
 package org.jmx.connection;
 
-import java.io.IOException;
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnectionNotification;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,39 +22,188 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 
+/**
+ * Open connections by JVM. A connection is dropped once idle for three poll intervals, and as soon as its connector reports it
+ * failed or closed; a dropped connection that was still in use is then reconnected in the background, with the connector's
+ * discovery metadata and the ObjectName index loaded before it is handed out, so that polls never connect inline once a JVM
+ * has been connected to. Polls made while the reconnect is in flight are turned away with a {@link ReconnectingException}.
+ */
 public final class JmxConnectionCache {
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final LoadingCache<VirtualMachineConnector, JmxConnection> cache;
+    private final ConnectionTimeouts timeouts;
+    private final long queryResyncMs;
+    private final ConcurrentMap<VirtualMachineConnector, ListenableFuture<JmxConnection>> reconnects = new ConcurrentHashMap<>();
+    // whose background reconnect failed and was reported; the next lookup, which the caller's backoff delays, tries again
+    private final Set<VirtualMachineConnector> awaitingReconnect = Sets.newConcurrentHashSet();
 
-    public JmxConnectionCache( int pollRateMs ) {
+    public JmxConnectionCache( int pollRateMs, ConnectionTimeouts timeouts, long queryResyncMs ) {
+        this.timeouts = checkNotNull( timeouts, "timeouts is required" );
+        checkArgument( queryResyncMs > 0, "queryResyncMs must be > 0: %s", queryResyncMs );
+        this.queryResyncMs = queryResyncMs;
         cache = CacheBuilder.newBuilder().expireAfterAccess( pollRateMs * 3, TimeUnit.MILLISECONDS ).removalListener(
           new RemovalListener<VirtualMachineConnector, JmxConnection>() {
               @Override
               public void onRemoval( RemovalNotification<VirtualMachineConnector, JmxConnection> notification ) {
+                  if( notification.getValue() == null ) {
+                      return;
+                  }
+                  logger.info( notification.wasEvicted() ? "Removing idle connection to {}" : "Closing connection to {}", notification.getKey() );
+                  // the cache would only log a rejection, leaking the connector; close it here instead
                   try {
-                      if( notification.getValue() != null ) {
-                          logger.info( "Removing idle connection to {}", notification.getKey() );
-                          notification.getValue().getConnector().close();
-                      }
-                  } catch( IOException e ) {
-                      logger.error( "Error closing connection to {}", notification.getKey(), e );
+                      timeouts.getMaintenanceExecutor().execute( () -> close( notification.getKey(), notification.getValue() ) );
+                  } catch( RejectedExecutionException e ) {
+                      close( notification.getKey(), notification.getValue() );
                   }
               }
           } ).build( new CacheLoader<VirtualMachineConnector, JmxConnection>() {
             @Override
             public JmxConnection load( VirtualMachineConnector key ) throws Exception {
-                return key.connect();
+                return connect( key );
+            }
+        } );
+    }
+
+    private void close( VirtualMachineConnector connector, JmxConnection connection ) {
+        try {
+            connection.close();
+        } catch( Exception e ) {
+            logger.error( "Error closing connection to {}", connector, e );
+        }
+    }
+
+    private JmxConnection connect( VirtualMachineConnector connector ) {
+        long startNanos = System.nanoTime();
+        JmxConnection connection = connector.connect( timeouts );
+        timeouts.getTelemetry().connected( System.nanoTime() - startNanos );
+        connection.setQueryResyncMs( queryResyncMs );
+        watch( connector, connection );
+        return connection;
+    }
+
+    private void watch( VirtualMachineConnector connector, JmxConnection connection ) {
+        NotificationListener listener = ( notification, handback ) -> {
+            String type = notification.getType();
+            if( JMXConnectionNotification.FAILED.equals( type ) || JMXConnectionNotification.CLOSED.equals( type ) ) {
+                // a connection closed because it was evicted is no longer cached, and is not reconnected
+                if( cache.asMap().remove( connector, connection ) ) {
+                    logger.info( "Lost connection to {} ({}); reconnecting in the background", connector, type );
+                    // if it cannot start now, the next lookup starts it
+                    reconnect( connector );
+                }
+            }
+        };
+        connection.getConnector().addConnectionNotificationListener( listener, null, null );
+    }
+
+    /**
+     * @return false if the reconnect could not be started, in which case the next lookup tries again
+     */
+    private boolean reconnect( VirtualMachineConnector connector ) {
+        ListenableFutureTask<JmxConnection> reconnect = ListenableFutureTask.create( () -> {
+            JmxConnection connection = connect( connector );
+            try {
+                connection.prefetch();
+            } catch( Exception e ) {
+                timeouts.closeQuietly( connection.getConnector() );
+                throw e;
+            }
+            if( !reconnects.containsKey( connector ) || cache.asMap().putIfAbsent( connector, connection ) != null ) {
+                // invalidated, or connected inline, meanwhile
+                timeouts.closeQuietly( connection.getConnector() );
             }
+            return connection;
         } );
+        // registered before it runs, so that it finds itself registered unless invalidated
+        reconnects.put( connector, reconnect );
+        try {
+            timeouts.getMaintenanceExecutor().execute( reconnect );
+            return true;
+        } catch( RejectedExecutionException e ) {
+            // never to run, so never to be done: a lookup would wait on it for good
+            reconnects.remove( connector, reconnect );
+            awaitingReconnect.add( connector );
+            logger.warn( "Unable to start reconnecting to {}", connector, e );
+            return false;
+        }
     }
 
+    private static UnableToAttachException notStarted( VirtualMachineConnector connector ) {
+        return new UnableToAttachException( String.format( "Unable to start reconnecting to JVM '%s'", connector ) );
+    }
+
+    /**
+     * @throws ReconnectingException while the connection is being reconnected in the background, or when a failed reconnect has
+     * just been started again
+     * @throws UnableToAttachException if the JVM could not be connected to, or a reconnect could not be started; a JVM that was
+     * connected to before is retried in the background on the next lookup, so callers that back off after a failure also back off
+     * reconnects
+     */
     public JmxConnection lookup( VirtualMachineConnector connector ) throws UnableToAttachException {
+        if( awaitingReconnect.remove( connector ) ) {
+            if( !reconnect( connector ) ) {
+                throw notStarted( connector );
+            }
+            throw new ReconnectingException( String.format( "Reconnecting to JVM '%s'", connector ) );
+        }
+        ListenableFuture<JmxConnection> reconnect = reconnects.get( connector );
+        if( reconnect != null ) {
+            if( !reconnect.isDone() ) {
+                throw new ReconnectingException( String.format( "Reconnecting to JVM '%s'", connector ) );
+            }
+            try {
+                reconnect.get();
+                reconnects.remove( connector, reconnect );
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new UnableToAttachException( String.format( "Interrupted reconnecting to JVM '%s'", connector ), e );
+            } catch( ExecutionException e ) {
+                if( reconnects.remove( connector, reconnect ) ) {
+                    awaitingReconnect.add( connector );
+                }
+                throw new UnableToAttachException( String.format( "Unable to reconnect to JVM '%s'", connector ), e.getCause() );
+            }
+        }
         try {
-            return cache.get( connector );
+            JmxConnection connection = cache.get( connector );
+            if( connection.isBroken() ) {
+                // timed out; its connector is being closed, and whichever of this and the close notification comes first reconnects
+                if( cache.asMap().remove( connector, connection ) ) {
+                    logger.info( "Connection to {} timed out; reconnecting in the background", connector );
+                    if( !reconnect( connector ) ) {
+                        throw notStarted( connector );
+                    }
+                }
+                throw new ReconnectingException( String.format( "Reconnecting to JVM '%s'", connector ) );
+            }
+            return connection;
         } catch( ExecutionException e ) {
             throw new UnableToAttachException( String.format( "Unable to attach to JVM '%s'", connector ), e.getCause() );
         }
     }
+
+    public void invalidate( VirtualMachineConnector connector ) {
+        awaitingReconnect.remove( connector );
+        ListenableFuture<JmxConnection> reconnect = reconnects.remove( connector );
+        if( reconnect != null ) {
+            reconnect.cancel( true );
+        }
+        cache.invalidate( connector );
+    }
+
+    /**
+     * @return a live view of the open connections
+     */
+    public Map<VirtualMachineConnector, JmxConnection> asMap() {
+        return Collections.unmodifiableMap( cache.asMap() );
+    }
+
+    public long size() {
+        return cache.size();
+    }
 }
@@ -0,0 +1,11 @@
+package org.jmx.connection;
+
+import java.io.IOException;
+
+public class JmxTimeoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public JmxTimeoutException( String message ) {
+        super( message );
+    }
+}
@@ -0,0 +1,93 @@
+package org.jmx.connection;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.base.Splitter;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+/**
+ * Identifies one run of a JVM: its pid plus the time its process started, which tells a recycled pid apart from the JVM that
+ * previously owned it. The start time comes from {@code /proc/<pid>/stat}; where that is not available the attach display name
+ * stands in for it, which catches the common case of a different application reusing the pid.
+ */
+public final class JvmIdentity {
+    // starttime is field 22 of /proc/<pid>/stat; counted from the state field that follows the parenthesised command name
+    private static final int START_TIME_FIELD = 22 - 3;
+    private static final Path PROC = Paths.get( "/proc" );
+
+    private final String pid;
+    private final long startTime;
+    private final String displayName;
+
+    JvmIdentity( String pid, long startTime, String displayName ) {
+        this.pid = checkNotNull( pid, "pid is required" );
+        this.startTime = startTime;
+        this.displayName = startTime >= 0 ? null : displayName;
+    }
+
+    public static JvmIdentity of( VirtualMachineDescriptor descriptor ) {
+        return new JvmIdentity( descriptor.id(), readStartTime( descriptor.id() ), descriptor.displayName() );
+    }
+
+    /**
+     * @return the process start time in clock ticks since boot, or -1 if it cannot be determined
+     */
+    static long readStartTime( String pid ) {
+        Path stat = PROC.resolve( pid ).resolve( "stat" );
+        if( !Files.isReadable( stat ) ) {
+            return -1;
+        }
+        try {
+            String line = new String( Files.readAllBytes( stat ), StandardCharsets.US_ASCII );
+            // the command name may itself contain spaces and parentheses, so fields are counted from the last ')'
+            int commandEnd = line.lastIndexOf( ')' );
+            if( commandEnd < 0 ) {
+                return -1;
+            }
+            int field = 0;
+            for( String value : Splitter.on( ' ' ).omitEmptyStrings().split( line.substring( commandEnd + 1 ) ) ) {
+                if( field++ == START_TIME_FIELD ) {
+                    return Long.parseLong( value.trim() );
+                }
+            }
+            return -1;
+        } catch( IOException | NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    public String getPid() {
+        return pid;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if( this == o ) {
+            return true;
+        }
+        if( o == null || getClass() != o.getClass() ) {
+            return false;
+        }
+        JvmIdentity that = (JvmIdentity) o;
+        return startTime == that.startTime && Objects.equal( pid, that.pid ) && Objects.equal( displayName, that.displayName );
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode( pid, startTime, displayName );
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).omitNullValues().add( "pid", pid ).add( "startTime", startTime >= 0 ? startTime : null )
+          .add( "displayName", displayName ).toString();
+    }
+}
@@ -0,0 +1,9 @@
+package org.jmx.connection;
+
+public class NonMatchingJvmException extends UnableToAttachException {
+    private static final long serialVersionUID = 1L;
+
+    public NonMatchingJvmException( String message ) {
+        super( message );
+    }
+}
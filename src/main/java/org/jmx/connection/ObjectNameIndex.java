@@ -0,0 +1,143 @@
+package org.jmx.connection;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Every ObjectName registered in one MBean server, indexed by domain and by each {@code key=value} key property, so that a
+ * pattern is matched locally: the candidates are the smallest of the sets named by its literal domain and literal key properties,
+ * and only those are tested against the pattern. A pattern with a wildcard domain is tested against every name, and one with an
+ * empty domain is read, as the MBean server reads it, as naming the server's default domain.
+ */
+final class ObjectNameIndex {
+    private final ConcurrentMap<String, Set<ObjectName>> byDomain = new ConcurrentHashMap<>();
+    // keyed on domain:key=value
+    private final ConcurrentMap<String, Set<ObjectName>> byKeyProperty = new ConcurrentHashMap<>();
+    private volatile String defaultDomain = "";
+
+    void setDefaultDomain( String defaultDomain ) {
+        this.defaultDomain = defaultDomain == null ? "" : defaultDomain;
+    }
+
+    /**
+     * @return {@code pattern} with an empty domain replaced by the server's default domain, otherwise {@code pattern} itself
+     */
+    ObjectName resolve( ObjectName pattern ) {
+        if( !pattern.getDomain().isEmpty() || defaultDomain.isEmpty() ) {
+            return pattern;
+        }
+        try {
+            return ObjectName.getInstance( defaultDomain + pattern.getCanonicalName() );
+        } catch( MalformedObjectNameException e ) {
+            throw Throwables.propagate( e );
+        }
+    }
+
+    void addAll( Collection<ObjectName> objectNames ) {
+        for( ObjectName objectName : objectNames ) {
+            add( objectName );
+        }
+    }
+
+    boolean add( ObjectName objectName ) {
+        boolean added = add( byDomain, objectName.getDomain(), objectName );
+        if( added ) {
+            for( Map.Entry<String, String> property : objectName.getKeyPropertyList().entrySet() ) {
+                add( byKeyProperty, keyPropertyKey( objectName.getDomain(), property.getKey(), property.getValue() ), objectName );
+            }
+        }
+        return added;
+    }
+
+    boolean remove( ObjectName objectName ) {
+        boolean removed = remove( byDomain, objectName.getDomain(), objectName );
+        if( removed ) {
+            for( Map.Entry<String, String> property : objectName.getKeyPropertyList().entrySet() ) {
+                remove( byKeyProperty, keyPropertyKey( objectName.getDomain(), property.getKey(), property.getValue() ), objectName );
+            }
+        }
+        return removed;
+    }
+
+    void clear() {
+        byDomain.clear();
+        byKeyProperty.clear();
+    }
+
+    /**
+     * @return the names {@code pattern} matches, which may also be a plain ObjectName
+     */
+    Set<ObjectName> query( ObjectName pattern ) {
+        pattern = resolve( pattern );
+        if( pattern.isDomainPattern() ) {
+            Set<ObjectName> matches = new HashSet<>();
+            for( Set<ObjectName> names : byDomain.values() ) {
+                addMatches( pattern, names, matches );
+            }
+            return matches;
+        }
+
+        Set<ObjectName> candidates = byDomain.get( pattern.getDomain() );
+        if( candidates == null ) {
+            return ImmutableSet.of();
+        }
+        for( Map.Entry<String, String> property : pattern.getKeyPropertyList().entrySet() ) {
+            if( pattern.isPropertyValuePattern( property.getKey() ) ) {
+                continue;
+            }
+            Set<ObjectName> names = byKeyProperty.get( keyPropertyKey( pattern.getDomain(), property.getKey(), property.getValue() ) );
+            if( names == null ) {
+                return ImmutableSet.of();
+            }
+            if( names.size() < candidates.size() ) {
+                candidates = names;
+            }
+        }
+        Set<ObjectName> matches = new HashSet<>();
+        addMatches( pattern, candidates, matches );
+        return matches;
+    }
+
+    private static void addMatches( ObjectName pattern, Set<ObjectName> candidates, Set<ObjectName> matches ) {
+        for( ObjectName candidate : candidates ) {
+            if( pattern.apply( candidate ) ) {
+                matches.add( candidate );
+            }
+        }
+    }
+
+    // both under the map's lock for the key, so that a set emptied and dropped by one is never added to by the other
+    private static boolean add( ConcurrentMap<String, Set<ObjectName>> index, String key, ObjectName objectName ) {
+        boolean[] added = new boolean[1];
+        index.compute( key, ( k, names ) -> {
+            Set<ObjectName> set = names == null ? Sets.newConcurrentHashSet() : names;
+            added[0] = set.add( objectName );
+            return set;
+        } );
+        return added[0];
+    }
+
+    private static boolean remove( ConcurrentMap<String, Set<ObjectName>> index, String key, ObjectName objectName ) {
+        boolean[] removed = new boolean[1];
+        index.computeIfPresent( key, ( k, names ) -> {
+            removed[0] = names.remove( objectName );
+            return names.isEmpty() ? null : names;
+        } );
+        return removed[0];
+    }
+
+    private static String keyPropertyKey( String domain, String key, String value ) {
+        return domain + ':' + key + '=' + value;
+    }
+}
@@ -0,0 +1,12 @@
+package org.jmx.connection;
+
+/**
+ * Thrown instead of connecting inline while a lost connection is re-established in the background.
+ */
+public class ReconnectingException extends UnableToAttachException {
+    private static final long serialVersionUID = 1L;
+
+    public ReconnectingException( String message ) {
+        super( message );
+    }
+}
@@ -7,7 +7,6 @@ import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServerConnection;
 import javax.management.remote.JMXConnector;
-import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import org.jmx.config.JvmInstanceConfiguration;
@@ -23,7 +22,7 @@ import com.google.common.base.Throwables;
 
 public final class RmiConnector implements VirtualMachineConnector {
     private final Logger logger = LoggerFactory.getLogger( getClass() );
-    private final JvmInstanceConfiguration jvmInstanceConfiguration;
+    private volatile JvmInstanceConfiguration jvmInstanceConfiguration;
     private final int jmxPort;
 
     public RmiConnector( int port, JvmInstanceConfiguration jvmInstanceConfiguration ) {
@@ -34,6 +33,24 @@ public final class RmiConnector implements VirtualMachineConnector {
         this.jmxPort = port;
     }
 
+    public int getJmxPort() {
+        return jmxPort;
+    }
+
+    public JvmInstanceConfiguration getJvmInstanceConfiguration() {
+        return jvmInstanceConfiguration;
+    }
+
+    /**
+     * Applies a reloaded configuration whose port range still covers this port to connections made from now on.
+     */
+    public void setJvmInstanceConfiguration( JvmInstanceConfiguration jvmInstanceConfiguration ) {
+        checkNotNull( jvmInstanceConfiguration, "jvmInstanceConfiguration is required" );
+        checkArgument( jvmInstanceConfiguration.getJmxPortRange() != null && jvmInstanceConfiguration.getJmxPortRange().contains( jmxPort ),
+          "port %s is not in the range of %s", jmxPort, jvmInstanceConfiguration );
+        this.jvmInstanceConfiguration = jvmInstanceConfiguration;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper( this ).add( "jmxPort", jmxPort ).toString();
@@ -57,22 +74,20 @@ public final class RmiConnector implements VirtualMachineConnector {
     }
 
     @Override
-    public JmxConnection connect() {
+    public JmxConnection connect( ConnectionTimeouts timeouts ) {
         try {
             Stopwatch sw = Stopwatch.createStarted();
-            // TODO - timeout
-            // https://community.oracle.com/blogs/emcmanus/2007/05/23/making-jmx-connection-timeout
 
             JMXServiceURL jmxUrl = new JMXServiceURL( String.format( "service:jmx:rmi:///jndi/rmi://:%d/jmxrmi", jmxPort ) );
             logger.info( "Connecting to JVM via {}", jmxUrl );
 
-            JMXConnector connector = JMXConnectorFactory.connect( jmxUrl );
+            JMXConnector connector = timeouts.connect( jmxUrl );
             final MBeanServerConnection mbeanServerConnection = connector.getMBeanServerConnection();
 
             sw.stop();
             logger.info( "Connected to '{}' in {}ms", jmxUrl, sw.elapsed( TimeUnit.MILLISECONDS ) );
 
-            return new JmxConnection( connector, mbeanServerConnection, createConnectionMetaData( jmxPort ) );
+            return new JmxConnection( connector, mbeanServerConnection, createConnectionMetaData( jmxPort ), timeouts );
         } catch( Exception e ) {
             throw Throwables.propagate( e );
         }
@@ -80,11 +95,12 @@ public final class RmiConnector implements VirtualMachineConnector {
 
     private ConnectionMetaData createConnectionMetaData( int port ) throws IOException {
 
+        JvmInstanceConfiguration jvmInstanceConfiguration = this.jvmInstanceConfiguration;
         EvaluationContext ctx = new StandardEvaluationContext();
         ctx.setVariable( "port", port );
         String jvmInstanceName = null;
         if( jvmInstanceConfiguration != null ) {
-             jvmInstanceName = jvmInstanceConfiguration.getJvmNameExtractor().getValue( ctx, String.class );
+             jvmInstanceName = Expressions.evaluate( jvmInstanceConfiguration.getJvmNameExtractor(), ctx, String.class );
         }
 
         return new ConnectionMetaData( null, null, null, jvmInstanceConfiguration, jvmInstanceName );
@@ -1,6 +1,8 @@
 package org.jmx.connection;
 
 public class UnableToAttachException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public UnableToAttachException( String message ) {
         super( message );
     }
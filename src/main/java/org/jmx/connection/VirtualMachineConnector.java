@@ -2,5 +2,5 @@ package org.jmx.connection;
 
 public interface VirtualMachineConnector {
 
-    JmxConnection connect();
+    JmxConnection connect( ConnectionTimeouts timeouts );
 }
@@ -0,0 +1,224 @@
+package org.jmx.perfdata;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Works out the platform MXBean attributes read by {@code jvm-core-metrics.json} from the jvmstat counters HotSpot exports in its
+ * performance data, under the ObjectNames and attribute names the MXBeans themselves use, so that the configured aliases apply
+ * unchanged.
+ * <p>
+ * Covered: collection count and time of the young and full collectors, usage of the eden, survivor and old pools, heap usage,
+ * class loading, thread counts and total compilation time. Collector and pool names depend on the collector in use and are only
+ * known for G1, Parallel, Serial and CMS; other collectors (ZGC, Shenandoah, Epsilon) yield no GC or pool readings.
+ * <p>
+ * Not covered, for want of counters that agree with the MXBeans: init and max of the eden and survivor pools, the Metaspace and
+ * Compressed Class Space pools (their counters are only updated by a collection), initial heap size, non-heap memory, buffer
+ * pools and the finalization queue.
+ */
+public final class CoreJvmCounters {
+    private static final String POLICY_COUNTER = "sun.gc.policy.name";
+    private static final String TICKS_PER_SECOND_COUNTER = "sun.os.hrt.frequency";
+    private static final String G1 = "GarbageFirst";
+    private static final String SURVIVOR_0 = "sun.gc.generation.0.space.1";
+    private static final String SURVIVOR_1 = "sun.gc.generation.0.space.2";
+
+    // collector 0 is the young collector and collector 1 the full one, whatever the policy
+    private static final ImmutableMap<String, GcNames> GC_NAMES = ImmutableMap.of(
+      G1, new GcNames( "G1 Young Generation", "G1 Old Generation", "G1 Eden Space", "G1 Survivor Space", "G1 Old Gen" ),
+      "ParScav:MSC", new GcNames( "PS Scavenge", "PS MarkSweep", "PS Eden Space", "PS Survivor Space", "PS Old Gen" ),
+      "Copy:MSC", new GcNames( "Copy", "MarkSweepCompact", "Eden Space", "Survivor Space", "Tenured Gen" ),
+      "ParNew:CMS", new GcNames( "ParNew", "ConcurrentMarkSweep", "Par Eden Space", "Par Survivor Space", "CMS Old Gen" ) );
+
+    private CoreJvmCounters() {
+        throw new AssertionError( "Cannot instantiate " + getClass() );
+    }
+
+    /**
+     * @return every reading {@code perfData} has the counters for
+     */
+    public static List<CounterReading> resolve( PerfData perfData ) {
+        checkNotNull( perfData, "perfData is required" );
+        Resolver resolver = new Resolver( perfData );
+        GcNames gcNames = GC_NAMES.get( perfData.getString( POLICY_COUNTER ) );
+        if( gcNames != null ) {
+            resolver.collector( 0, gcNames.youngCollector );
+            resolver.collector( 1, gcNames.fullCollector );
+            resolver.pool( gcNames.eden, "sun.gc.generation.0.space.0", false );
+            resolver.survivorPool( gcNames.survivor );
+            resolver.pool( gcNames.old, "sun.gc.generation.1.space.0", true );
+        }
+        resolver.heap( G1.equals( perfData.getString( POLICY_COUNTER ) ) );
+        resolver.classLoading();
+        resolver.threading();
+        resolver.compilation();
+        return resolver.readings.build();
+    }
+
+    private static final class GcNames {
+        private final String youngCollector;
+        private final String fullCollector;
+        private final String eden;
+        private final String survivor;
+        private final String old;
+
+        private GcNames( String youngCollector, String fullCollector, String eden, String survivor, String old ) {
+            this.youngCollector = youngCollector;
+            this.fullCollector = fullCollector;
+            this.eden = eden;
+            this.survivor = survivor;
+            this.old = old;
+        }
+    }
+
+    private static final class Resolver {
+        private final PerfData perfData;
+        private final double millisPerTick;
+        private final ImmutableList.Builder<CounterReading> readings = ImmutableList.builder();
+
+        private Resolver( PerfData perfData ) {
+            this.perfData = perfData;
+            PerfData.Counter ticksPerSecond = perfData.find( TICKS_PER_SECOND_COUNTER );
+            this.millisPerTick = ticksPerSecond == null || ticksPerSecond.isString() ? Double.NaN : 1000.0 / ticksPerSecond.longValue();
+        }
+
+        void collector( int index, String name ) {
+            ObjectName objectName = objectName( "java.lang:type=GarbageCollector,name=" + name );
+            String prefix = "sun.gc.collector." + index;
+            PerfData.Counter invocations = counter( prefix + ".invocations" );
+            if( invocations != null ) {
+                readings.add( CounterReading.sum( objectName, "CollectionCount", null, 1, invocations ) );
+            }
+            timer( objectName, "CollectionTime", prefix + ".time" );
+        }
+
+        void pool( String name, String prefix, boolean withInitAndMax ) {
+            ObjectName objectName = memoryPool( name );
+            add( objectName, "used", prefix + ".used" );
+            add( objectName, "committed", prefix + ".capacity" );
+            if( withInitAndMax ) {
+                add( objectName, "max", prefix + ".maxCapacity" );
+                add( objectName, "init", prefix + ".initCapacity" );
+            }
+        }
+
+        void survivorPool( String name ) {
+            // the pool is both survivor spaces, but only one of them is in use outside a collection and it is the one reported
+            ObjectName objectName = memoryPool( name );
+            PerfData.Counter[] used = counters( SURVIVOR_0 + ".used", SURVIVOR_1 + ".used" );
+            if( used != null ) {
+                readings.add( CounterReading.sum( objectName, "Usage", "used", 1, used ) );
+            }
+            PerfData.Counter[] committed = counters( SURVIVOR_0 + ".capacity", SURVIVOR_1 + ".capacity" );
+            if( committed != null ) {
+                readings.add( CounterReading.largest( objectName, "Usage", "committed", committed ) );
+            }
+        }
+
+        void heap( boolean g1 ) {
+            ObjectName objectName = objectName( "java.lang:type=Memory" );
+            PerfData.Counter[] used = counters( "sun.gc.generation.0.space.0.used", SURVIVOR_0 + ".used", SURVIVOR_1 + ".used",
+              "sun.gc.generation.1.space.0.used" );
+            if( used != null ) {
+                readings.add( CounterReading.sum( objectName, "HeapMemoryUsage", "used", 1, used ) );
+            }
+            // like the MXBean, count one survivor space only; G1's first survivor space is a placeholder a few bytes large
+            PerfData.Counter[] committed = counters( "sun.gc.generation.0.capacity", "sun.gc.generation.1.capacity" );
+            PerfData.Counter[] idleSurvivor = counters( SURVIVOR_0 + ".capacity" );
+            if( committed != null && idleSurvivor != null ) {
+                readings.add( CounterReading.difference( objectName, "HeapMemoryUsage", "committed", committed, idleSurvivor ) );
+            }
+            PerfData.Counter[] max = counters( "sun.gc.generation.0.maxCapacity", "sun.gc.generation.1.maxCapacity" );
+            PerfData.Counter[] idleSurvivorMax = counters( SURVIVOR_0 + ".maxCapacity" );
+            if( max != null && idleSurvivorMax != null ) {
+                // G1 regions move between generations, so each generation may grow to the whole heap
+                readings.add( g1 ? CounterReading.largest( objectName, "HeapMemoryUsage", "max", max )
+                  : CounterReading.difference( objectName, "HeapMemoryUsage", "max", max, idleSurvivorMax ) );
+            }
+        }
+
+        void classLoading() {
+            ObjectName objectName = objectName( "java.lang:type=ClassLoading" );
+            PerfData.Counter[] loaded = counters( "java.cls.loadedClasses", "java.cls.sharedLoadedClasses" );
+            PerfData.Counter[] unloaded = counters( "java.cls.unloadedClasses", "java.cls.sharedUnloadedClasses" );
+            if( loaded == null || unloaded == null ) {
+                return;
+            }
+            readings.add( CounterReading.sum( objectName, "TotalLoadedClassCount", null, 1, loaded ) );
+            readings.add( CounterReading.sum( objectName, "UnloadedClassCount", null, 1, unloaded ) );
+            readings.add( CounterReading.difference( objectName, "LoadedClassCount", null, loaded, unloaded ) );
+        }
+
+        void threading() {
+            ObjectName objectName = objectName( "java.lang:type=Threading" );
+            PerfData.Counter live = counter( "java.threads.live" );
+            if( live != null ) {
+                readings.add( CounterReading.sum( objectName, "ThreadCount", null, 1, live ) );
+            }
+            PerfData.Counter daemon = counter( "java.threads.daemon" );
+            if( daemon != null ) {
+                readings.add( CounterReading.sum( objectName, "DaemonThreadCount", null, 1, daemon ) );
+            }
+        }
+
+        void compilation() {
+            timer( objectName( "java.lang:type=Compilation" ), "TotalCompilationTime", "java.ci.totalTime" );
+        }
+
+        private void timer( ObjectName objectName, String attributeName, String name ) {
+            // timers count high resolution ticks; the MXBeans report milliseconds
+            PerfData.Counter ticks = counter( name );
+            if( ticks != null && !Double.isNaN( millisPerTick ) ) {
+                readings.add( CounterReading.sum( objectName, attributeName, null, millisPerTick, ticks ) );
+            }
+        }
+
+        private void add( ObjectName objectName, String nestedName, String name ) {
+            PerfData.Counter counter = counter( name );
+            if( counter != null ) {
+                readings.add( CounterReading.sum( objectName, "Usage", nestedName, 1, counter ) );
+            }
+        }
+
+        private PerfData.Counter counter( String name ) {
+            PerfData.Counter counter = perfData.find( name );
+            return counter == null || counter.isString() ? null : counter;
+        }
+
+        /**
+         * @return all of the named counters, or null if any of them is missing
+         */
+        private PerfData.Counter[] counters( String... names ) {
+            List<PerfData.Counter> counters = new ArrayList<>( names.length );
+            for( String name : names ) {
+                PerfData.Counter counter = counter( name );
+                if( counter == null ) {
+                    return null;
+                }
+                counters.add( counter );
+            }
+            return counters.toArray( new PerfData.Counter[ counters.size() ] );
+        }
+
+        private static ObjectName memoryPool( String name ) {
+            return objectName( "java.lang:type=MemoryPool,name=" + name );
+        }
+
+        private static ObjectName objectName( String name ) {
+            try {
+                return ObjectName.getInstance( name );
+            } catch( MalformedObjectNameException e ) {
+                throw Throwables.propagate( e );
+            }
+        }
+    }
+}
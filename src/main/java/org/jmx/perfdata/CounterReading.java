@@ -0,0 +1,87 @@
+package org.jmx.perfdata;
+
+import static com.google.common.base.Preconditions.*;
+
+import javax.management.ObjectName;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * One platform MXBean attribute worked out from performance data counters, e.g. {@code Usage.used} of the
+ * {@code java.lang:type=MemoryPool,name=G1 Eden Space} MBean from {@code sun.gc.generation.0.space.0.used}. The counters are read
+ * on every {@link #read()}, so a reading is resolved once per mapping and read on every poll without allocating.
+ */
+public final class CounterReading {
+    private enum Operation {
+        SUM, LARGEST
+    }
+
+    private final ObjectName objectName;
+    private final String attributeName;
+    private final String nestedName;
+    private final Operation operation;
+    private final PerfData.Counter[] added;
+    private final PerfData.Counter[] subtracted;
+    private final double scale;
+
+    private CounterReading( ObjectName objectName, String attributeName, String nestedName, Operation operation, PerfData.Counter[] added,
+      PerfData.Counter[] subtracted, double scale ) {
+        this.objectName = checkNotNull( objectName, "objectName is required" );
+        this.attributeName = checkNotNull( attributeName, "attributeName is required" );
+        this.nestedName = nestedName;
+        this.operation = operation;
+        this.added = added;
+        this.subtracted = subtracted;
+        this.scale = scale;
+    }
+
+    static CounterReading sum( ObjectName objectName, String attributeName, String nestedName, double scale, PerfData.Counter... counters ) {
+        return new CounterReading( objectName, attributeName, nestedName, Operation.SUM, counters, new PerfData.Counter[ 0 ], scale );
+    }
+
+    static CounterReading largest( ObjectName objectName, String attributeName, String nestedName, PerfData.Counter... counters ) {
+        return new CounterReading( objectName, attributeName, nestedName, Operation.LARGEST, counters, new PerfData.Counter[ 0 ], 1 );
+    }
+
+    static CounterReading difference( ObjectName objectName, String attributeName, String nestedName, PerfData.Counter[] added,
+      PerfData.Counter[] subtracted ) {
+        return new CounterReading( objectName, attributeName, nestedName, Operation.SUM, added, subtracted, 1 );
+    }
+
+    /**
+     * @return the MBean this reading stands in for
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * @return the composite item within the attribute, e.g. {@code used} of {@code Usage}, or null for a simple attribute
+     */
+    public String getNestedName() {
+        return nestedName;
+    }
+
+    public double read() {
+        long value = 0;
+        for( PerfData.Counter counter : added ) {
+            long counterValue = counter.longValue();
+            value = operation == Operation.LARGEST ? Math.max( value, counterValue ) : value + counterValue;
+        }
+        for( PerfData.Counter counter : subtracted ) {
+            value -= counter.longValue();
+        }
+        // whole units, as the MXBeans report them
+        return scale == 1 ? value : (long) (value * scale);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).omitNullValues().add( "objectName", objectName ).add( "attributeName", attributeName )
+          .add( "nestedName", nestedName ).toString();
+    }
+}
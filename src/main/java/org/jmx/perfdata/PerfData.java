@@ -0,0 +1,173 @@
+package org.jmx.perfdata;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A HotSpot performance data file ({@code hsperfdata_<user>/<pid>}) mapped into memory. The entry directory is parsed once;
+ * {@link Counter}s read their value straight from the mapping, so they always see what the JVM last wrote without copying or
+ * re-parsing the file.
+ * <p>
+ * Layout (version 2): a 32-byte prologue - magic {@code 0xcafec0c0} (always big endian), byte order, major and minor version,
+ * accessible flag, used and overflow sizes, modification time stamp, offset of the first entry and number of entries - followed
+ * by the entries, each a 20-byte header with its length, name offset, vector length, type, flags, units, variability and data
+ * offset.
+ */
+public final class PerfData {
+    private static final int MAGIC = 0xcafec0c0;
+    private static final int SUPPORTED_MAJOR_VERSION = 2;
+    private static final int BYTE_ORDER_OFFSET = 4;
+    private static final int MAJOR_VERSION_OFFSET = 5;
+    private static final int ACCESSIBLE_OFFSET = 7;
+    private static final int ENTRY_OFFSET_OFFSET = 24;
+    private static final int NUM_ENTRIES_OFFSET = 28;
+    private static final byte TYPE_LONG = 'J';
+    private static final byte TYPE_BYTE = 'B';
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int numEntries;
+    private final Map<String, Counter> counters;
+
+    private PerfData( Path file, ByteBuffer buffer ) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if( buffer.capacity() < NUM_ENTRIES_OFFSET + 4 || buffer.order( ByteOrder.BIG_ENDIAN ).getInt( 0 ) != MAGIC ) {
+            throw new IOException( file + " is not a HotSpot performance data file" );
+        }
+        buffer.order( buffer.get( BYTE_ORDER_OFFSET ) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN );
+        if( buffer.get( MAJOR_VERSION_OFFSET ) != SUPPORTED_MAJOR_VERSION ) {
+            throw new IOException( file + " has unsupported performance data version " + buffer.get( MAJOR_VERSION_OFFSET ) );
+        }
+        if( buffer.get( ACCESSIBLE_OFFSET ) == 0 ) {
+            throw new IOException( file + " is not accessible yet; the JVM is still starting" );
+        }
+
+        this.numEntries = buffer.getInt( NUM_ENTRIES_OFFSET );
+        Map<String, Counter> counters = new TreeMap<>();
+        int position = buffer.getInt( ENTRY_OFFSET_OFFSET );
+        for( int i = 0; i < numEntries; i++ ) {
+            int entryLength = buffer.getInt( position );
+            if( entryLength <= 0 || position + entryLength > buffer.capacity() ) {
+                throw new IOException( file + " has a corrupt entry at offset " + position );
+            }
+            int nameOffset = buffer.getInt( position + 4 );
+            int vectorLength = buffer.getInt( position + 8 );
+            byte type = buffer.get( position + 12 );
+            int dataOffset = buffer.getInt( position + 16 );
+
+            String name = readString( position + nameOffset, entryLength - nameOffset );
+            if( type == TYPE_LONG && vectorLength == 0 ) {
+                counters.put( name, new Counter( name, position + dataOffset, 0 ) );
+            } else if( type == TYPE_BYTE && vectorLength > 0 ) {
+                counters.put( name, new Counter( name, position + dataOffset, vectorLength ) );
+            }
+            position += entryLength;
+        }
+        this.counters = Collections.unmodifiableMap( counters );
+    }
+
+    /**
+     * Maps {@code file} read-only. The mapping outlives the file channel and is released when this instance is garbage collected.
+     */
+    public static PerfData open( Path file ) throws IOException {
+        checkNotNull( file, "file is required" );
+        try( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            return new PerfData( file, channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+        }
+    }
+
+    /**
+     * @return true if the JVM has created counters since this file was parsed, e.g. for a collector or class loader it started
+     * using later; {@link #open} it again to see them
+     */
+    public boolean hasNewCounters() {
+        return buffer.getInt( NUM_ENTRIES_OFFSET ) != numEntries;
+    }
+
+    /**
+     * @return the counter called {@code name}, or null if the JVM does not export it
+     */
+    public Counter find( String name ) {
+        return counters.get( name );
+    }
+
+    /**
+     * @return every long and string counter, by name
+     */
+    public Map<String, Counter> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return the value of the string counter {@code name}, or null if there is none
+     */
+    public String getString( String name ) {
+        Counter counter = counters.get( name );
+        return counter == null || !counter.isString() ? null : counter.stringValue();
+    }
+
+    private String readString( int position, int maxLength ) {
+        int length = 0;
+        while( length < maxLength && buffer.get( position + length ) != 0 ) {
+            length++;
+        }
+        byte[] bytes = new byte[ length ];
+        for( int i = 0; i < length; i++ ) {
+            bytes[ i ] = buffer.get( position + i );
+        }
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "file", file ).add( "counters", counters.size() ).toString();
+    }
+
+    public final class Counter {
+        private final String name;
+        private final int dataPosition;
+        // 0 for a long, the capacity in bytes for a string
+        private final int vectorLength;
+
+        private Counter( String name, int dataPosition, int vectorLength ) {
+            this.name = name;
+            this.dataPosition = dataPosition;
+            this.vectorLength = vectorLength;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isString() {
+            return vectorLength > 0;
+        }
+
+        public long longValue() {
+            checkState( !isString(), "%s is a string counter", name );
+            return buffer.getLong( dataPosition );
+        }
+
+        public String stringValue() {
+            return isString() ? readString( dataPosition, vectorLength ) : Long.toString( buffer.getLong( dataPosition ) );
+        }
+
+        @Override
+        public String toString() {
+            return name + '=' + stringValue();
+        }
+    }
+}
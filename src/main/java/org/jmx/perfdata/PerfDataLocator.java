@@ -0,0 +1,50 @@
+package org.jmx.perfdata;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Finds the performance data file a local JVM publishes as {@code hsperfdata_<user>/<pid>} in the temporary directory. The owning
+ * user is not known up front, so every {@code hsperfdata_*} directory is searched.
+ */
+public final class PerfDataLocator {
+    private PerfDataLocator() {
+        throw new AssertionError( "Cannot instantiate " + getClass() );
+    }
+
+    /**
+     * @return the performance data file of {@code pid}, or null if it has none, e.g. because it runs with {@code -XX:-UsePerfData}
+     * or in another mount namespace
+     */
+    public static Path find( String pid ) {
+        for( Path directory : temporaryDirectories() ) {
+            try( DirectoryStream<Path> userDirectories = Files.newDirectoryStream( directory, "hsperfdata_*" ) ) {
+                for( Path userDirectory : userDirectories ) {
+                    Path file = userDirectory.resolve( pid );
+                    if( Files.isRegularFile( file ) && Files.isReadable( file ) ) {
+                        return file;
+                    }
+                }
+            } catch( IOException e ) {
+                // unreadable or missing temporary directory; try the next one
+            }
+        }
+        return null;
+    }
+
+    private static Set<Path> temporaryDirectories() {
+        Set<Path> directories = new LinkedHashSet<>();
+        directories.add( Paths.get( System.getProperty( "java.io.tmpdir" ) ) );
+        // HotSpot always uses /tmp on Linux, whatever java.io.tmpdir says
+        Path tmp = Paths.get( "/tmp" );
+        if( Files.isDirectory( tmp ) ) {
+            directories.add( tmp );
+        }
+        return directories;
+    }
+}
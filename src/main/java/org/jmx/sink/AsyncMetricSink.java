@@ -0,0 +1,217 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Decouples the pollers from metric delivery. Pollers write into a bounded {@link MetricRingBuffer} and never wait; dedicated
+ * sink threads drain it into every downstream sink and flush them whenever the queue runs dry. A sample that arrives while the
+ * queue is full is dropped and counted, so a slow sink costs data rather than poll latency.
+ * <p>
+ * A sink thread that finds the queue empty backs off for a few milliseconds, which covers the gaps within a poll cycle, then
+ * parks until a poller's write wakes it, so sink threads cost nothing between poll cycles.
+ */
+@ManagedResource
+public class AsyncMetricSink implements MetricSink, AutoCloseable {
+    private static final int DRAIN_BATCH = 256;
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos( 5 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final MetricRingBuffer ringBuffer;
+    private final List<MetricSink> sinks;
+    private final Thread[] threads;
+    private final MetricSink fanOut;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong sinkErrors = new AtomicLong();
+    // 1 for each sink thread parked until woken, and how many are
+    private final AtomicIntegerArray parked;
+    private final AtomicInteger parkedCount = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public AsyncMetricSink( int capacity, int threadCount, List<MetricSink> sinks ) {
+        checkArgument( threadCount > 0, "threadCount must be > 0: %s", threadCount );
+        this.sinks = ImmutableList.copyOf( checkNotNull( sinks, "sinks is required" ) );
+        checkArgument( !this.sinks.isEmpty(), "at least one sink is required" );
+        this.ringBuffer = new MetricRingBuffer( capacity );
+        this.fanOut = this.sinks.size() == 1 ? this.sinks.get( 0 ) : new FanOut( this.sinks );
+        this.threads = new Thread[ threadCount ];
+        this.parked = new AtomicIntegerArray( threadCount );
+        for( int i = 0; i < threadCount; i++ ) {
+            final int index = i;
+            threads[ i ] = new Thread( () -> drainLoop( index ), "metric-sink-" + i );
+            threads[ i ].setDaemon( true );
+            threads[ i ].start();
+        }
+    }
+
+    @Override
+    public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+        if( ringBuffer.offer( series, kind, value, timestampMs ) ) {
+            accepted.incrementAndGet();
+            if( parkedCount.get() > 0 ) {
+                wakeParked();
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * No-op for producers: the sink threads flush downstream on their own as soon as the queue is drained.
+     */
+    @Override
+    public void flush() {
+    }
+
+    private void wakeParked() {
+        for( int i = 0; i < threads.length; i++ ) {
+            if( parked.get( i ) == 1 && parked.compareAndSet( i, 1, 0 ) ) {
+                LockSupport.unpark( threads[ i ] );
+            }
+        }
+    }
+
+    private void drainLoop( int index ) {
+        long idleNanos = 0;
+        boolean pendingFlush = false;
+        while( running ) {
+            int drained = drainOnce();
+            if( drained > 0 ) {
+                pendingFlush = true;
+                idleNanos = 0;
+                continue;
+            }
+            if( pendingFlush ) {
+                flushSinks();
+                pendingFlush = false;
+            }
+            if( idleNanos < MAX_IDLE_NANOS ) {
+                idleNanos = Math.min( MAX_IDLE_NANOS, Math.max( 50_000, idleNanos * 2 ) );
+                LockSupport.parkNanos( this, idleNanos );
+            } else {
+                parkUntilWritten( index );
+            }
+        }
+        // deliver what the pollers managed to queue before shutdown
+        while( drainOnce() > 0 ) {
+        }
+        flushSinks();
+    }
+
+    private void parkUntilWritten( int index ) {
+        parked.set( index, 1 );
+        parkedCount.incrementAndGet();
+        // a write that lands before the count went up is seen here; one that lands after sees the count and wakes this thread
+        while( running && parked.get( index ) == 1 && ringBuffer.size() == 0 ) {
+            LockSupport.park( this );
+        }
+        parked.set( index, 0 );
+        parkedCount.decrementAndGet();
+    }
+
+    private int drainOnce() {
+        try {
+            int drained = ringBuffer.drainTo( fanOut, DRAIN_BATCH );
+            delivered.addAndGet( drained );
+            return drained;
+        } catch( RuntimeException e ) {
+            // the sample that failed is lost, the slot has already been released
+            sinkErrors.incrementAndGet();
+            logger.warn( "Metric sink failed", e );
+            return 1;
+        }
+    }
+
+    private void flushSinks() {
+        for( MetricSink sink : sinks ) {
+            try {
+                sink.flush();
+            } catch( RuntimeException e ) {
+                sinkErrors.incrementAndGet();
+                logger.warn( "Unable to flush {}", sink, e );
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for( Thread thread : threads ) {
+            LockSupport.unpark( thread );
+        }
+        try {
+            for( Thread thread : threads ) {
+                thread.join( TimeUnit.SECONDS.toMillis( 5 ) );
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @ManagedAttribute
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    @ManagedAttribute
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    @ManagedAttribute
+    public long getSinkErrors() {
+        return sinkErrors.get();
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return ringBuffer.size();
+    }
+
+    @ManagedAttribute
+    public int getQueueCapacity() {
+        return ringBuffer.capacity();
+    }
+
+    private static final class FanOut implements MetricSink {
+        private final MetricSink[] sinks;
+
+        private FanOut( List<MetricSink> sinks ) {
+            this.sinks = sinks.toArray( new MetricSink[ sinks.size() ] );
+        }
+
+        @Override
+        public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+            for( MetricSink sink : sinks ) {
+                sink.write( series, kind, value, timestampMs );
+            }
+        }
+
+        @Override
+        public void flush() {
+            for( MetricSink sink : sinks ) {
+                sink.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import org.jmx.statsd.DogStatsdEmitter;
+
+public final class DogStatsdMetricSink implements MetricSink {
+    private final DogStatsdEmitter emitter;
+
+    public DogStatsdMetricSink( DogStatsdEmitter emitter ) {
+        this.emitter = checkNotNull( emitter, "emitter is required" );
+    }
+
+    @Override
+    public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+        if( kind == MetricKind.COUNT ) {
+            emitter.count( series.getEncodedName(), Math.round( value ), series.getTags().getEncodedDogStatsd() );
+        } else {
+            emitter.gauge( series.getEncodedName(), value, series.getTags().getEncodedDogStatsd() );
+        }
+    }
+
+    @Override
+    public void flush() {
+        emitter.flush();
+    }
+}
@@ -0,0 +1,207 @@
+package org.jmx.sink;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size bit stream of samples compressed after Facebook's Gorilla: the first timestamp and value are stored whole, later
+ * timestamps as the difference between successive deltas and later values as the XOR with the previous value, with only its
+ * meaningful bits stored. Samples taken at a steady interval whose values change little cost a couple of bytes each instead of
+ * sixteen. The backing array is reused when the block is {@link #reset()}.
+ */
+final class GorillaBlock {
+    // the most one sample can take: the widest timestamp code plus the widest value code
+    private static final int MAX_SAMPLE_BITS = 4 + 64 + 2 + 5 + 6 + 64;
+
+    private final long[] words;
+    private int bitPosition;
+    private int count;
+    private long firstTimestampMs;
+    private long lastTimestampMs;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeadingZeros;
+    private int lastTrailingZeros;
+
+    GorillaBlock( int sizeBytes ) {
+        this.words = new long[ sizeBytes / 8 ];
+    }
+
+    void reset() {
+        bitPosition = 0;
+        count = 0;
+        // the stream is only ever ORed into
+        Arrays.fill( words, 0 );
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getFirstTimestampMs() {
+        return firstTimestampMs;
+    }
+
+    long getLastTimestampMs() {
+        return lastTimestampMs;
+    }
+
+    int getSizeBytes() {
+        return words.length * 8;
+    }
+
+    /**
+     * @return false if the block is full and the sample was not added
+     */
+    boolean append( long timestampMs, double value ) {
+        if( bitPosition + MAX_SAMPLE_BITS > words.length * 64 ) {
+            return false;
+        }
+        long valueBits = Double.doubleToRawLongBits( value );
+        if( count == 0 ) {
+            writeBits( timestampMs, 64 );
+            writeBits( valueBits, 64 );
+            firstTimestampMs = timestampMs;
+            lastDelta = 0;
+            lastLeadingZeros = Integer.MAX_VALUE;
+        } else {
+            long delta = timestampMs - lastTimestampMs;
+            writeTimestamp( delta - lastDelta );
+            writeValue( valueBits ^ lastValueBits );
+            lastDelta = delta;
+        }
+        lastTimestampMs = timestampMs;
+        lastValueBits = valueBits;
+        count++;
+        return true;
+    }
+
+    private void writeTimestamp( long deltaOfDelta ) {
+        if( deltaOfDelta == 0 ) {
+            writeBits( 0, 1 );
+        } else if( deltaOfDelta >= -63 && deltaOfDelta <= 64 ) {
+            writeBits( 0b10, 2 );
+            writeBits( deltaOfDelta, 7 );
+        } else if( deltaOfDelta >= -255 && deltaOfDelta <= 256 ) {
+            writeBits( 0b110, 3 );
+            writeBits( deltaOfDelta, 9 );
+        } else if( deltaOfDelta >= -2047 && deltaOfDelta <= 2048 ) {
+            writeBits( 0b1110, 4 );
+            writeBits( deltaOfDelta, 12 );
+        } else {
+            // timestamps are in milliseconds, so unlike in the paper a gap may not fit in 32 bits
+            writeBits( 0b1111, 4 );
+            writeBits( deltaOfDelta, 64 );
+        }
+    }
+
+    private void writeValue( long xor ) {
+        if( xor == 0 ) {
+            writeBits( 0, 1 );
+            return;
+        }
+        int leadingZeros = Math.min( Long.numberOfLeadingZeros( xor ), 31 );
+        int trailingZeros = Long.numberOfTrailingZeros( xor );
+        if( leadingZeros >= lastLeadingZeros && trailingZeros >= lastTrailingZeros ) {
+            // fits the previous window of meaningful bits
+            writeBits( 0b10, 2 );
+            writeBits( xor >>> lastTrailingZeros, 64 - lastLeadingZeros - lastTrailingZeros );
+        } else {
+            int meaningfulBits = 64 - leadingZeros - trailingZeros;
+            writeBits( 0b11, 2 );
+            writeBits( leadingZeros, 5 );
+            // 64 meaningful bits are written as 0
+            writeBits( meaningfulBits, 6 );
+            writeBits( xor >>> trailingZeros, meaningfulBits );
+            lastLeadingZeros = leadingZeros;
+            lastTrailingZeros = trailingZeros;
+        }
+    }
+
+    private void writeBits( long bits, int length ) {
+        if( length < 64 ) {
+            bits &= (1L << length) - 1;
+        }
+        int word = bitPosition >>> 6;
+        int free = 64 - (bitPosition & 63);
+        if( length <= free ) {
+            words[ word ] |= bits << (free - length);
+        } else {
+            words[ word ] |= bits >>> (length - free);
+            words[ word + 1 ] |= bits << (64 - (length - free));
+        }
+        bitPosition += length;
+    }
+
+    /**
+     * Decodes every sample into {@code timestamps} and {@code values} from {@code offset}.
+     */
+    void decode( long[] timestamps, double[] values, int offset ) {
+        Reader reader = new Reader();
+        long timestampMs = 0;
+        long delta = 0;
+        long valueBits = 0;
+        int leadingZeros = 0;
+        int trailingZeros = 0;
+        for( int i = 0; i < count; i++ ) {
+            if( i == 0 ) {
+                timestampMs = reader.read( 64 );
+                valueBits = reader.read( 64 );
+            } else {
+                delta += reader.readTimestamp();
+                timestampMs += delta;
+                if( reader.read( 1 ) == 1 ) {
+                    if( reader.read( 1 ) == 1 ) {
+                        leadingZeros = (int) reader.read( 5 );
+                        int meaningfulBits = (int) reader.read( 6 );
+                        if( meaningfulBits == 0 ) {
+                            meaningfulBits = 64;
+                        }
+                        trailingZeros = 64 - leadingZeros - meaningfulBits;
+                    }
+                    valueBits ^= reader.read( 64 - leadingZeros - trailingZeros ) << trailingZeros;
+                }
+            }
+            timestamps[ offset + i ] = timestampMs;
+            values[ offset + i ] = Double.longBitsToDouble( valueBits );
+        }
+    }
+
+    private final class Reader {
+        private int position;
+
+        long read( int length ) {
+            int word = position >>> 6;
+            int available = 64 - (position & 63);
+            long bits;
+            if( length <= available ) {
+                bits = words[ word ] >>> (available - length);
+            } else {
+                bits = words[ word ] << (length - available) | words[ word + 1 ] >>> (64 - (length - available));
+            }
+            position += length;
+            return length == 64 ? bits : bits & ((1L << length) - 1);
+        }
+
+        long readTimestamp() {
+            if( read( 1 ) == 0 ) {
+                return 0;
+            }
+            if( read( 1 ) == 0 ) {
+                return signed( read( 7 ), 7 );
+            }
+            if( read( 1 ) == 0 ) {
+                return signed( read( 9 ), 9 );
+            }
+            if( read( 1 ) == 0 ) {
+                return signed( read( 12 ), 12 );
+            }
+            return read( 64 );
+        }
+
+        private long signed( long bits, int length ) {
+            // the ranges are asymmetric, e.g. -63..64 in 7 bits, so 64 reads back as -64 and needs the same correction as in Gorilla
+            long value = bits << (64 - length) >> (64 - length);
+            return value == -(1L << (length - 1)) ? 1L << (length - 1) : value;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.jmx.sink;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Keeps every sample it receives; intended for tests and diagnostics rather than production use.
+ */
+public final class InMemoryMetricSink implements MetricSink {
+    private final ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+        samples.add( new Sample( series, kind, value, timestampMs ) );
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    public List<Sample> getSamples() {
+        return ImmutableList.copyOf( samples );
+    }
+
+    public List<Sample> getSamples( String name ) {
+        List<Sample> matching = new ArrayList<>();
+        for( Sample sample : samples ) {
+            if( sample.getSeries().getName().equals( name ) ) {
+                matching.add( sample );
+            }
+        }
+        return matching;
+    }
+
+    public void clear() {
+        samples.clear();
+    }
+
+    public static final class Sample {
+        private final MetricSeries series;
+        private final MetricKind kind;
+        private final double value;
+        private final long timestampMs;
+
+        private Sample( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+            this.series = series;
+            this.kind = kind;
+            this.value = value;
+            this.timestampMs = timestampMs;
+        }
+
+        public MetricSeries getSeries() {
+            return series;
+        }
+
+        public MetricKind getKind() {
+            return kind;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public long getTimestampMs() {
+            return timestampMs;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper( this ).add( "series", series ).add( "kind", kind ).add( "value", value ).add( "timestampMs",
+              timestampMs ).toString();
+        }
+    }
+}
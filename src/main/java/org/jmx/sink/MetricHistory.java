@@ -0,0 +1,205 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Recent samples of every series, kept in memory so that they can still be looked at when the statsd agent or the backend had a
+ * gap. Each series is a chain of {@link GorillaBlock}s of {@value #BLOCK_BYTES} bytes. The number of blocks is bounded by a
+ * memory budget: once it is reached, or once the oldest block holds nothing newer than {@code retentionMs}, the oldest block of
+ * any series is reused for the next one needed. Counts are kept as the increments written to sinks.
+ */
+public final class MetricHistory implements MetricSink {
+    private static final int BLOCK_BYTES = 512;
+
+    private final long retentionMs;
+    private final int maxBlocks;
+    private final ConcurrentMap<MetricSeries, SeriesHistory> histories = new ConcurrentHashMap<>();
+    // every block in use, oldest first; a series' lock is only taken under this one, never the other way round
+    private final ArrayDeque<Allocation> allocations = new ArrayDeque<>();
+    private int allocatedBlocks;
+
+    public MetricHistory( long retentionMs, long budgetBytes ) {
+        checkArgument( retentionMs > 0, "retentionMs must be > 0: %s", retentionMs );
+        checkArgument( budgetBytes >= BLOCK_BYTES, "budgetBytes must be >= %s: %s", BLOCK_BYTES, budgetBytes );
+        this.retentionMs = retentionMs;
+        this.maxBlocks = (int) Math.min( Integer.MAX_VALUE, budgetBytes / BLOCK_BYTES );
+    }
+
+    @Override
+    public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+        while( true ) {
+            SeriesHistory history = histories.get( series );
+            if( history == null ) {
+                SeriesHistory created = new SeriesHistory( series, kind );
+                history = histories.putIfAbsent( series, created );
+                if( history == null ) {
+                    history = created;
+                }
+            }
+            if( history.append( timestampMs, value ) || history.append( allocate( history, timestampMs ), timestampMs, value ) ) {
+                return;
+            }
+            // the series lost its last block to another one and was dropped meanwhile; its new block is recycled like any other
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    private GorillaBlock allocate( SeriesHistory owner, long nowMs ) {
+        synchronized( allocations ) {
+            GorillaBlock block;
+            Allocation oldest = allocations.peekFirst();
+            if( oldest != null && (allocatedBlocks >= maxBlocks || oldest.block.getLastTimestampMs() < nowMs - retentionMs) ) {
+                allocations.removeFirst();
+                if( oldest.owner.release( oldest.block, oldest.owner != owner ) ) {
+                    histories.remove( oldest.owner.series, oldest.owner );
+                }
+                block = oldest.block;
+                block.reset();
+            } else {
+                block = new GorillaBlock( BLOCK_BYTES );
+                allocatedBlocks++;
+            }
+            allocations.addLast( new Allocation( owner, block ) );
+            return block;
+        }
+    }
+
+    /**
+     * @return every series whose name matches {@code namePattern}, in which {@code *} stands for any characters, with its
+     * samples taken since {@code sinceMs}: {@code name}, {@code tags}, {@code kind}, and {@code timestamps} and {@code values} as
+     * parallel arrays, oldest first
+     */
+    public List<Map<String, Object>> query( String namePattern, long sinceMs ) {
+        Pattern pattern = globToRegex( checkNotNull( namePattern, "namePattern is required" ) );
+        List<Map<String, Object>> result = new ArrayList<>();
+        for( SeriesHistory history : histories.values() ) {
+            if( !pattern.matcher( history.series.getName() ).matches() ) {
+                continue;
+            }
+            Map<String, Object> series = history.read( sinceMs );
+            if( series != null ) {
+                result.add( series );
+            }
+        }
+        return result;
+    }
+
+    public int getSeriesCount() {
+        return histories.size();
+    }
+
+    public long getSizeBytes() {
+        synchronized( allocations ) {
+            return (long) allocatedBlocks * BLOCK_BYTES;
+        }
+    }
+
+    private static Pattern globToRegex( String glob ) {
+        StringBuilder regex = new StringBuilder();
+        for( String literal : glob.split( "\\*", -1 ) ) {
+            if( regex.length() > 0 ) {
+                regex.append( ".*" );
+            }
+            regex.append( Pattern.quote( literal ) );
+        }
+        return Pattern.compile( regex.toString() );
+    }
+
+    private static final class Allocation {
+        private final SeriesHistory owner;
+        private final GorillaBlock block;
+
+        private Allocation( SeriesHistory owner, GorillaBlock block ) {
+            this.owner = owner;
+            this.block = block;
+        }
+    }
+
+    private static final class SeriesHistory {
+        private final MetricSeries series;
+        private final MetricKind kind;
+        // oldest first
+        private final ArrayDeque<GorillaBlock> blocks = new ArrayDeque<>();
+        // set once the series has been dropped for having no blocks left; nothing is added to it from then on
+        private boolean dropped;
+
+        private SeriesHistory( MetricSeries series, MetricKind kind ) {
+            this.series = series;
+            this.kind = kind;
+        }
+
+        /**
+         * @return false if a new block is needed
+         */
+        synchronized boolean append( long timestampMs, double value ) {
+            GorillaBlock last = blocks.peekLast();
+            if( last == null ) {
+                return false;
+            }
+            // samples from one series arrive in order but for the odd sink thread race, and the encoding needs them in order
+            return timestampMs < last.getLastTimestampMs() || last.append( timestampMs, value );
+        }
+
+        /**
+         * @return false if the series has been dropped
+         */
+        synchronized boolean append( GorillaBlock block, long timestampMs, double value ) {
+            if( dropped ) {
+                return false;
+            }
+            blocks.addLast( block );
+            block.append( timestampMs, value );
+            return true;
+        }
+
+        /**
+         * @return true if no blocks are left and the series was dropped
+         */
+        synchronized boolean release( GorillaBlock block, boolean dropIfEmpty ) {
+            blocks.remove( block );
+            dropped = dropIfEmpty && blocks.isEmpty();
+            return dropped;
+        }
+
+        synchronized Map<String, Object> read( long sinceMs ) {
+            int count = 0;
+            for( GorillaBlock block : blocks ) {
+                count += block.getCount();
+            }
+            long[] timestamps = new long[ count ];
+            double[] values = new double[ count ];
+            int offset = 0;
+            for( GorillaBlock block : blocks ) {
+                block.decode( timestamps, values, offset );
+                offset += block.getCount();
+            }
+            int first = 0;
+            while( first < count && timestamps[ first ] < sinceMs ) {
+                first++;
+            }
+            if( first == count ) {
+                return null;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put( "name", series.getName() );
+            result.put( "tags", Arrays.asList( series.getTags().getTags() ) );
+            result.put( "kind", kind.name() );
+            result.put( "timestamps", Arrays.copyOfRange( timestamps, first, count ) );
+            result.put( "values", Arrays.copyOfRange( values, first, count ) );
+            return result;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package org.jmx.sink;
+
+public enum MetricKind {
+    GAUGE, COUNT
+}
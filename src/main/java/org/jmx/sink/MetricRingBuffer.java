@@ -0,0 +1,116 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded multi-producer, multi-consumer queue of samples after Vyukov: every slot carries a sequence number that tells
+ * producers and consumers whose turn it is, so neither side ever locks and a full queue is detected without contending on the
+ * consumer index. Samples are stored field by field in preallocated arrays, so offering one allocates nothing.
+ */
+final class MetricRingBuffer {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final MetricSeries[] series;
+    private final MetricKind[] kinds;
+    private final double[] values;
+    private final long[] timestamps;
+    private final AtomicLong head = new PaddedAtomicLong();
+    private final AtomicLong tail = new PaddedAtomicLong();
+
+    MetricRingBuffer( int capacity ) {
+        checkArgument( capacity >= 2, "capacity must be >= 2: %s", capacity );
+        int size = Integer.highestOneBit( capacity - 1 ) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray( size );
+        for( int i = 0; i < size; i++ ) {
+            sequences.set( i, i );
+        }
+        this.series = new MetricSeries[ size ];
+        this.kinds = new MetricKind[ size ];
+        this.values = new double[ size ];
+        this.timestamps = new long[ size ];
+    }
+
+    /**
+     * @return false if the queue is full and the sample was not accepted
+     */
+    boolean offer( MetricSeries metricSeries, MetricKind kind, double value, long timestampMs ) {
+        long position = tail.get();
+        int index;
+        while( true ) {
+            index = (int) position & mask;
+            long difference = sequences.get( index ) - position;
+            if( difference == 0 ) {
+                if( tail.compareAndSet( position, position + 1 ) ) {
+                    break;
+                }
+                position = tail.get();
+            } else if( difference < 0 ) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        series[ index ] = metricSeries;
+        kinds[ index ] = kind;
+        values[ index ] = value;
+        timestamps[ index ] = timestampMs;
+        // publishes the slot fields to the consumer that claims this position
+        sequences.lazySet( index, position + 1 );
+        return true;
+    }
+
+    /**
+     * Hands up to {@code limit} queued samples to {@code sink}, in order, and releases their slots.
+     *
+     * @return the number of samples drained
+     */
+    int drainTo( MetricSink sink, int limit ) {
+        int drained = 0;
+        while( drained < limit ) {
+            long position = head.get();
+            int index;
+            while( true ) {
+                index = (int) position & mask;
+                long difference = sequences.get( index ) - (position + 1);
+                if( difference == 0 ) {
+                    if( head.compareAndSet( position, position + 1 ) ) {
+                        break;
+                    }
+                    position = head.get();
+                } else if( difference < 0 ) {
+                    return drained;
+                } else {
+                    position = head.get();
+                }
+            }
+            MetricSeries metricSeries = series[ index ];
+            MetricKind kind = kinds[ index ];
+            double value = values[ index ];
+            long timestampMs = timestamps[ index ];
+            series[ index ] = null;
+            sequences.lazySet( index, position + mask + 1 );
+            drained++;
+            sink.write( metricSeries, kind, value, timestampMs );
+        }
+        return drained;
+    }
+
+    int size() {
+        return (int) Math.max( 0, tail.get() - head.get() );
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    // keeps the producer and consumer indexes off each other's cache lines
+    @SuppressWarnings( "unused" )
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
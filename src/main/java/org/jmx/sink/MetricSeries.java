@@ -0,0 +1,58 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jmx.statsd.DogStatsdEmitter;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A metric name and tag set, identified by a compact 64-bit id. Instances are created when a fetch plan is built and handed to
+ * sinks by reference, so sinks can key their own state on them without any per-sample work.
+ */
+public final class MetricSeries {
+    private final long id;
+    private final String name;
+    private final byte[] encodedName;
+    private final TagSet tags;
+
+    public MetricSeries( String name, TagSet tags ) {
+        this.name = checkNotNull( name, "name is required" );
+        this.tags = checkNotNull( tags, "tags is required" );
+        this.encodedName = DogStatsdEmitter.encodeName( name );
+        this.id = idFor( name, tags );
+    }
+
+    private static long idFor( String name, TagSet tags ) {
+        Hasher hasher = Hashing.murmur3_128().newHasher().putString( name, StandardCharsets.UTF_8 );
+        for( int i = 0; i < tags.size(); i++ ) {
+            hasher.putByte( (byte) 0 ).putString( tags.get( i ), StandardCharsets.UTF_8 );
+        }
+        return hasher.hash().asLong();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public byte[] getEncodedName() {
+        return encodedName;
+    }
+
+    public TagSet getTags() {
+        return tags;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper( this ).add( "name", name ).add( "tags", tags ).toString();
+    }
+}
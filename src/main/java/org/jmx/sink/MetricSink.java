@@ -0,0 +1,12 @@
+package org.jmx.sink;
+
+/**
+ * Destination for collected samples. {@link #write} may be called from several threads at once and must not retain anything but
+ * the series reference; {@link #flush()} is called by each writing thread when it has no more samples for the moment.
+ */
+public interface MetricSink {
+
+    void write( MetricSeries series, MetricKind kind, double value, long timestampMs );
+
+    void flush();
+}
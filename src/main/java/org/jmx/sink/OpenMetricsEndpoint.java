@@ -0,0 +1,98 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the latest {@link OpenMetricsSink} snapshot at {@code /metrics} on an embedded HTTP server, and re-renders the snapshot
+ * every {@code rateMs}. A scrape only writes out the current snapshot, which is shared by concurrent scrapes, so scraping more
+ * often than the JVMs are polled adds no load to them. Disabled when {@code port} is 0. Binds to loopback unless
+ * {@code bindAddress} names another address, or {@code 0.0.0.0} for all of them.
+ */
+public final class OpenMetricsEndpoint {
+    private static final int SERVER_THREADS = 2;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final OpenMetricsSink sink;
+    private final String bindAddress;
+    private final int port;
+    private final TaskScheduler taskScheduler;
+    private final int rateMs;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledFuture<?> schedule;
+
+    public OpenMetricsEndpoint( OpenMetricsSink sink, String bindAddress, int port, TaskScheduler taskScheduler, int rateMs ) {
+        this.sink = checkNotNull( sink, "sink is required" );
+        this.bindAddress = bindAddress;
+        checkArgument( port >= 0 && port <= 65535, "port %s out of range", port );
+        this.port = port;
+        this.taskScheduler = checkNotNull( taskScheduler, "taskScheduler is required" );
+        checkArgument( rateMs > 0, "rateMs must be > 0: %s", rateMs );
+        this.rateMs = rateMs;
+    }
+
+    public void start() throws IOException {
+        if( port == 0 ) {
+            return;
+        }
+        executor = Executors.newFixedThreadPool( SERVER_THREADS, new ThreadFactoryBuilder().setNameFormat( "openmetrics-%d" ).setDaemon( true ).build() );
+        InetAddress address = Strings.isNullOrEmpty( bindAddress ) ? InetAddress.getLoopbackAddress() : InetAddress.getByName( bindAddress );
+        server = HttpServer.create( new InetSocketAddress( address, port ), 0 );
+        server.setExecutor( executor );
+        server.createContext( "/metrics", this::serve );
+        server.start();
+        schedule = taskScheduler.scheduleAtFixedRate( () -> sink.render( System.currentTimeMillis() ), rateMs );
+        logger.info( "Serving OpenMetrics on {}", server.getAddress() );
+    }
+
+    public void stop() {
+        if( schedule != null ) {
+            schedule.cancel( false );
+        }
+        if( server != null ) {
+            server.stop( 0 );
+            executor.shutdownNow();
+        }
+    }
+
+    private void serve( HttpExchange exchange ) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if( !"GET".equals( method ) && !"HEAD".equals( method ) ) {
+                exchange.getResponseHeaders().set( "Allow", "GET, HEAD" );
+                exchange.sendResponseHeaders( 405, -1 );
+                return;
+            }
+            byte[] snapshot = sink.getSnapshot();
+            exchange.getResponseHeaders().set( "Content-Type", OpenMetricsSink.CONTENT_TYPE );
+            if( "HEAD".equals( method ) ) {
+                exchange.getResponseHeaders().set( "Content-Length", String.valueOf( snapshot.length ) );
+                exchange.sendResponseHeaders( 200, -1 );
+                return;
+            }
+            exchange.sendResponseHeaders( 200, snapshot.length );
+            try( OutputStream body = exchange.getResponseBody() ) {
+                body.write( snapshot );
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
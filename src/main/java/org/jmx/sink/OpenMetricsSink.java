@@ -0,0 +1,271 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Keeps the latest value of every series and renders them all in the OpenMetrics text format on {@link #render(long)}, once per
+ * poll cycle, into a buffer that is reused from one cycle to the next. The result is published as an immutable snapshot that any
+ * number of scrapers write out as is, so a scrape costs neither a JMX call nor any formatting.
+ * <p>
+ * Gauges are exposed as gauges. Counts, which reach sinks as increments, are added up into counters that start when the series is
+ * first seen. Metric names have characters outside {@code [a-zA-Z0-9_:]} replaced by {@code _}; DogStatsD tags become labels,
+ * {@code key:value} as {@code key="value"} and a bare value as {@code tag="value"}. A series whose name is already taken by a
+ * series of the other kind gets the kind appended, e.g. {@code _gauge}. A series that has not been written for
+ * {@code staleAfterMs} is dropped.
+ */
+public final class OpenMetricsSink implements MetricSink {
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final byte[] EOF = "# EOF\n".getBytes( StandardCharsets.US_ASCII );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final long staleAfterMs;
+    private final ConcurrentMap<MetricSeries, Sample> samples = new ConcurrentHashMap<>();
+    // by exposed name, so that each family's samples are rendered together and in a stable order
+    private final ConcurrentNavigableMap<String, Family> families = new ConcurrentSkipListMap<>();
+    // only touched by render
+    private byte[] buffer = new byte[ 64 * 1024 ];
+    private int position;
+    private volatile byte[] snapshot = EOF;
+
+    public OpenMetricsSink( long staleAfterMs ) {
+        checkArgument( staleAfterMs > 0, "staleAfterMs must be > 0: %s", staleAfterMs );
+        this.staleAfterMs = staleAfterMs;
+    }
+
+    @Override
+    public void write( MetricSeries series, MetricKind kind, double value, long timestampMs ) {
+        Sample sample = samples.get( series );
+        if( sample == null ) {
+            sample = sampleFor( series, kind );
+        }
+        sample.update( value, timestampMs );
+    }
+
+    private Sample sampleFor( MetricSeries series, MetricKind kind ) {
+        String sanitized = sanitize( series.getName(), true );
+        String name = sanitized;
+        Family family;
+        while( true ) {
+            family = families.get( name );
+            if( family == null ) {
+                Family created = new Family( name, kind );
+                family = families.putIfAbsent( name, created );
+                if( family == null ) {
+                    family = created;
+                    if( !name.equals( sanitized ) ) {
+                        logger.warn( "{} {} is exposed as {}: its name is taken by a metric of another kind", kind, series.getName(), name );
+                    }
+                }
+            }
+            if( family.kind == kind ) {
+                break;
+            }
+            // a family has one type, and a count and a gauge whose names sanitize alike must not be added up as one
+            name = name + "_" + kind.name().toLowerCase();
+        }
+        Sample created = new Sample( series, family, prefixFor( family, series.getTags() ) );
+        Sample sample = samples.putIfAbsent( series, created );
+        if( sample == null ) {
+            family.samples.add( created );
+            sample = created;
+        }
+        return sample;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Renders the latest values into a new snapshot.
+     */
+    public synchronized void render( long nowMs ) {
+        position = 0;
+        for( Family family : families.values() ) {
+            boolean typeWritten = false;
+            for( Iterator<Sample> it = family.samples.iterator(); it.hasNext(); ) {
+                Sample sample = it.next();
+                if( nowMs - sample.writtenAtMs > staleAfterMs ) {
+                    it.remove();
+                    samples.remove( sample.series, sample );
+                    continue;
+                }
+                if( !typeWritten ) {
+                    append( family.typeLine );
+                    typeWritten = true;
+                }
+                append( sample.prefix );
+                appendValue( sample.value );
+                append( (byte) '\n' );
+            }
+        }
+        append( EOF );
+        snapshot = Arrays.copyOf( buffer, position );
+    }
+
+    /**
+     * @return the latest rendering; never modified, and shared by every caller
+     */
+    public byte[] getSnapshot() {
+        return snapshot;
+    }
+
+    public int getSeriesCount() {
+        return samples.size();
+    }
+
+    private void appendValue( double value ) {
+        if( value == (long) value && Math.abs( value ) < 1e15 ) {
+            appendLong( (long) value );
+        } else if( Double.isNaN( value ) ) {
+            append( "NaN" );
+        } else if( Double.isInfinite( value ) ) {
+            append( value > 0 ? "+Inf" : "-Inf" );
+        } else {
+            append( Double.toString( value ) );
+        }
+    }
+
+    private void appendLong( long value ) {
+        if( value < 0 ) {
+            append( (byte) '-' );
+            value = -value;
+        }
+        long divisor = 1;
+        while( divisor <= value / 10 ) {
+            divisor *= 10;
+        }
+        for( ; divisor > 0; divisor /= 10 ) {
+            append( (byte) ('0' + value / divisor % 10) );
+        }
+    }
+
+    private void append( String ascii ) {
+        ensureCapacity( ascii.length() );
+        for( int i = 0; i < ascii.length(); i++ ) {
+            buffer[ position++ ] = (byte) ascii.charAt( i );
+        }
+    }
+
+    private void append( byte[] bytes ) {
+        ensureCapacity( bytes.length );
+        System.arraycopy( bytes, 0, buffer, position, bytes.length );
+        position += bytes.length;
+    }
+
+    private void append( byte b ) {
+        ensureCapacity( 1 );
+        buffer[ position++ ] = b;
+    }
+
+    private void ensureCapacity( int length ) {
+        if( position + length > buffer.length ) {
+            buffer = Arrays.copyOf( buffer, Math.max( buffer.length * 2, position + length ) );
+        }
+    }
+
+    private static byte[] prefixFor( Family family, TagSet tags ) {
+        StringBuilder prefix = new StringBuilder( family.name );
+        if( family.kind == MetricKind.COUNT ) {
+            prefix.append( "_total" );
+        }
+        Set<String> labelNames = new HashSet<>();
+        String separator = "{";
+        for( int i = 0; i < tags.size(); i++ ) {
+            String tag = tags.get( i );
+            int colon = tag.indexOf( ':' );
+            String labelName = colon < 0 ? "tag" : sanitize( tag.substring( 0, colon ), false );
+            // a label may only appear once; later tags with the same name are left out
+            if( !labelNames.add( labelName ) ) {
+                continue;
+            }
+            prefix.append( separator ).append( labelName ).append( "=\"" );
+            escape( colon < 0 ? tag : tag.substring( colon + 1 ), prefix );
+            prefix.append( '"' );
+            separator = ",";
+        }
+        if( !labelNames.isEmpty() ) {
+            prefix.append( '}' );
+        }
+        return prefix.append( ' ' ).toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    private static String sanitize( String name, boolean allowColon ) {
+        StringBuilder sanitized = new StringBuilder( name.length() + 1 );
+        if( name.isEmpty() || name.charAt( 0 ) >= '0' && name.charAt( 0 ) <= '9' ) {
+            sanitized.append( '_' );
+        }
+        for( int i = 0; i < name.length(); i++ ) {
+            char c = name.charAt( i );
+            boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || allowColon && c == ':';
+            sanitized.append( valid ? c : '_' );
+        }
+        return sanitized.toString();
+    }
+
+    private static void escape( String value, StringBuilder out ) {
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if( c == '\\' || c == '"' ) {
+                out.append( '\\' ).append( c );
+            } else if( c == '\n' ) {
+                out.append( "\\n" );
+            } else {
+                out.append( c );
+            }
+        }
+    }
+
+    private static final class Family {
+        private final String name;
+        private final MetricKind kind;
+        private final byte[] typeLine;
+        private final Set<Sample> samples = Sets.newConcurrentHashSet();
+
+        private Family( String name, MetricKind kind ) {
+            this.name = name;
+            this.kind = kind;
+            this.typeLine = ("# TYPE " + name + (kind == MetricKind.COUNT ? " counter\n" : " gauge\n")).getBytes( StandardCharsets.US_ASCII );
+        }
+    }
+
+    private static final class Sample {
+        private final MetricSeries series;
+        private final Family family;
+        private final byte[] prefix;
+        private volatile double value;
+        private volatile long writtenAtMs;
+
+        private Sample( MetricSeries series, Family family, byte[] prefix ) {
+            this.series = series;
+            this.family = family;
+            this.prefix = prefix;
+        }
+
+        private void update( double value, long timestampMs ) {
+            if( family.kind == MetricKind.COUNT ) {
+                synchronized( this ) {
+                    this.value += value;
+                }
+            } else {
+                this.value = value;
+            }
+            writtenAtMs = timestampMs;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.jmx.sink;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Arrays;
+
+import org.jmx.statsd.DogStatsdEmitter;
+
+/**
+ * The tags shared by every series of one JVM, encoded once for the wire formats that need them.
+ */
+public final class TagSet {
+    private final String[] tags;
+    private final byte[] encodedDogStatsd;
+
+    public TagSet( String... tags ) {
+        this.tags = checkNotNull( tags, "tags is required" ).clone();
+        this.encodedDogStatsd = DogStatsdEmitter.encodeTags( this.tags );
+    }
+
+    public String[] getTags() {
+        return tags.clone();
+    }
+
+    int size() {
+        return tags.length;
+    }
+
+    String get( int index ) {
+        return tags[ index ];
+    }
+
+    public byte[] getEncodedDogStatsd() {
+        return encodedDogStatsd;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString( tags );
+    }
+}
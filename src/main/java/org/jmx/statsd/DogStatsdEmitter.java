@@ -0,0 +1,205 @@
+package org.jmx.statsd;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Writes dogstatsd lines straight into a per-thread direct buffer and sends them as few datagrams as the packet size allows.
+ * Metric names and tag suffixes are expected to be encoded once up front with {@link #encodeName(String)} and
+ * {@link #encodeTags(String[])}; nothing is allocated per metric. Callers must {@link #flush()} when they finish a batch.
+ */
+public final class DogStatsdEmitter implements AutoCloseable {
+    private static final byte[] EMPTY = new byte[ 0 ];
+    private static final byte[] GAUGE = "|g".getBytes( StandardCharsets.UTF_8 );
+    private static final byte[] COUNT = "|c".getBytes( StandardCharsets.UTF_8 );
+    // 2^63: doubles of this magnitude or more do not fit in a long
+    private static final double LONG_RANGE = 0x1p63;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private final DatagramChannel channel;
+    private final int maxPacketSize;
+    private final ThreadLocal<Encoder> encoders;
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong linesSent = new AtomicLong();
+    private final AtomicLong linesDropped = new AtomicLong();
+
+    public DogStatsdEmitter( String host, int port, int maxPacketSize ) throws IOException {
+        checkArgument( maxPacketSize >= 64 && maxPacketSize <= 65507, "maxPacketSize out of range: %s", maxPacketSize );
+        this.maxPacketSize = maxPacketSize;
+        this.channel = DatagramChannel.open();
+        this.channel.connect( new InetSocketAddress( checkNotNull( host, "host is required" ), port ) );
+        this.encoders = ThreadLocal.withInitial( Encoder::new );
+    }
+
+    public static byte[] encodeName( String name ) {
+        return name.getBytes( StandardCharsets.UTF_8 );
+    }
+
+    public static byte[] encodeTags( String... tags ) {
+        if( tags == null || tags.length == 0 ) {
+            return EMPTY;
+        }
+        return ("|#" + Joiner.on( ',' ).join( tags )).getBytes( StandardCharsets.UTF_8 );
+    }
+
+    public void gauge( byte[] name, double value, byte[] tags ) {
+        Encoder encoder = encoders.get();
+        int valueLength = encoder.formatDouble( value );
+        if( valueLength < 0 ) {
+            linesDropped.incrementAndGet();
+            return;
+        }
+        encoder.append( name, valueLength, GAUGE, tags );
+    }
+
+    public void count( byte[] name, long value, byte[] tags ) {
+        Encoder encoder = encoders.get();
+        encoder.append( name, encoder.formatLong( value ), COUNT, tags );
+    }
+
+    public void flush() {
+        encoders.get().send();
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getLinesSent() {
+        return linesSent.get();
+    }
+
+    public long getLinesDropped() {
+        return linesDropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private final class Encoder {
+        private final ByteBuffer packet = ByteBuffer.allocateDirect( maxPacketSize );
+        // digits are produced right to left, so the formatted value occupies the tail of this array
+        private final byte[] digits = new byte[ 40 ];
+        private int lines;
+
+        private void append( byte[] name, int valueLength, byte[] type, byte[] tags ) {
+            int lineLength = name.length + 1 + valueLength + type.length + tags.length;
+            if( lineLength > maxPacketSize ) {
+                linesDropped.incrementAndGet();
+                return;
+            }
+            int separator = lines > 0 ? 1 : 0;
+            if( packet.position() + separator + lineLength > maxPacketSize ) {
+                send();
+                separator = 0;
+            }
+            if( separator > 0 ) {
+                packet.put( (byte) '\n' );
+            }
+            packet.put( name ).put( (byte) ':' ).put( digits, digits.length - valueLength, valueLength ).put( type ).put( tags );
+            lines++;
+        }
+
+        private void send() {
+            if( lines == 0 ) {
+                return;
+            }
+            packet.flip();
+            try {
+                channel.write( packet );
+                packetsSent.incrementAndGet();
+                linesSent.addAndGet( lines );
+            } catch( IOException e ) {
+                linesDropped.addAndGet( lines );
+                logger.debug( "Unable to send {} metrics", lines, e );
+            } finally {
+                packet.clear();
+                lines = 0;
+            }
+        }
+
+        private int formatLong( long value ) {
+            if( value == Long.MIN_VALUE ) {
+                // cannot be negated; rare enough to allow the allocation
+                return formatAscii( Long.toString( value ) );
+            }
+            int pos = digits.length;
+            long remaining = Math.abs( value );
+            do {
+                digits[ --pos ] = (byte) ('0' + (remaining % 10));
+                remaining /= 10;
+            } while( remaining != 0 );
+            if( value < 0 ) {
+                digits[ --pos ] = '-';
+            }
+            return digits.length - pos;
+        }
+
+        private int formatAscii( String value ) {
+            byte[] bytes = value.getBytes( StandardCharsets.US_ASCII );
+            System.arraycopy( bytes, 0, digits, digits.length - bytes.length, bytes.length );
+            return bytes.length;
+        }
+
+        /**
+         * Formats with at most six fractional digits, trailing zeros removed. Magnitudes too large for a long are written as
+         * {@link Double#toString(double)} does, in scientific notation.
+         *
+         * @return the number of bytes written, or -1 for values statsd cannot represent
+         */
+        private int formatDouble( double value ) {
+            if( Double.isNaN( value ) || Double.isInfinite( value ) ) {
+                return -1;
+            }
+            double abs = Math.abs( value );
+            if( abs >= LONG_RANGE ) {
+                // Math.round would clamp to Long.MAX_VALUE; rare enough to allow the allocation
+                return formatAscii( Double.toString( value ) );
+            }
+            if( abs >= 1e12 || value == Math.rint( value ) ) {
+                return formatLong( Math.round( value ) );
+            }
+            long scaled = Math.round( abs * 1e6 );
+            if( scaled == 0 ) {
+                return formatLong( 0 );
+            }
+            long whole = scaled / 1000000;
+            long fraction = scaled % 1000000;
+
+            int pos = digits.length;
+            int fractionDigits = 6;
+            while( fractionDigits > 0 && fraction % 10 == 0 ) {
+                fraction /= 10;
+                fractionDigits--;
+            }
+            if( fractionDigits > 0 ) {
+                for( int i = 0; i < fractionDigits; i++ ) {
+                    digits[ --pos ] = (byte) ('0' + (fraction % 10));
+                    fraction /= 10;
+                }
+                digits[ --pos ] = '.';
+            }
+            do {
+                digits[ --pos ] = (byte) ('0' + (whole % 10));
+                whole /= 10;
+            } while( whole != 0 );
+            if( value < 0 ) {
+                digits[ --pos ] = '-';
+            }
+            return digits.length - pos;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.jmx
+
+import spock.lang.Specification
+
+class CounterStateStoreSpec extends Specification {
+    def store = new CounterStateStore( 1, 1000 )
+
+    def "counters report the increase since the previous sample"() {
+        expect:
+        Double.isNaN( store.delta( 7L, 10, 1000 ) )
+        store.delta( 7L, 15, 2000 ) == 5
+        store.rate( 7L, 25, 4000 ) == 5
+        Double.isNaN( store.delta( 7L, 3, 5000 ) )
+        Double.isNaN( store.delta( 7L, 4, 5000 ) )
+    }
+
+    def "an id of 0 is stored like any other"() {
+        expect:
+        Double.isNaN( store.delta( 0L, 1, 1000 ) )
+        store.delta( 0L, 2, 2000 ) == 1
+        store.size() == 1
+    }
+
+    def "expiring a random half keeps every survivor reachable and lets the expired come back"() {
+        given:
+        def random = new Random( 42 )
+
+        expect:
+        (0..<200).every { round ->
+            def roundStore = new CounterStateStore( 1, 1000 )
+            def ids = (0..<random.nextInt( 300 ) + 1).collect { random.nextLong() } as Set
+            def stale = ids.findAll { random.nextBoolean() } as Set
+            def live = ids - stale
+            ids.each { roundStore.delta( it, 1, it in stale ? 0 : 10_000 ) }
+
+            roundStore.expire( 10_500 )
+
+            assert roundStore.size() == live.size()
+            assert live.every { roundStore.delta( it, 2, 10_001 ) == 1 }
+            assert stale.every { Double.isNaN( roundStore.delta( it, 2, 10_001 ) ) }
+            assert stale.every { roundStore.delta( it, 3, 10_002 ) == 1 }
+            roundStore.size() == ids.size()
+        }
+    }
+
+    def "the table shrinks once most series have expired"() {
+        given:
+        (1..1000).each { store.delta( it * 0x9E3779B97F4A7C15L, 1, 0 ) }
+        def live = (1..10).collect { it * 31L }
+        live.each { store.delta( it, 1, 10_000 ) }
+
+        expect:
+        capacity() >= 2048
+
+        when:
+        store.expire( 10_500 )
+
+        then:
+        store.size() == 10
+        capacity() == 64
+        live.every { store.delta( it, 2, 10_001 ) == 1 }
+
+        when:
+        (1..1000).each { store.delta( it * 0x9E3779B97F4A7C15L, 1, 10_002 ) }
+
+        then:
+        store.size() == 1010
+        live.every { store.delta( it, 3, 10_003 ) == 1 }
+    }
+
+    private int capacity() {
+        store.segments[ 0 ].keys.length
+    }
+}
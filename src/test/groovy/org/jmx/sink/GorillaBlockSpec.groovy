@@ -0,0 +1,107 @@
+package org.jmx.sink
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class GorillaBlockSpec extends Specification {
+    def block = new GorillaBlock( 256 )
+
+    @Unroll
+    def "random #shape series read back exactly until the block is full"() {
+        given:
+        def random = new Random( seed )
+        def timestamps = []
+        def values = []
+        long timestampMs = 1_466_000_000_000L
+
+        when:
+        while( true ) {
+            timestampMs += nextStep( random )
+            double value = nextValue( random )
+            if( !block.append( timestampMs, value ) ) {
+                break
+            }
+            timestamps << timestampMs
+            values << value
+        }
+
+        then:
+        block.count == timestamps.size()
+        block.count > 1
+        block.firstTimestampMs == timestamps.first()
+        block.lastTimestampMs == timestamps.last()
+        decoded( block ) == [ timestamps, values.collect { Double.doubleToRawLongBits( it ) } ]
+
+        where:
+        shape             | seed | nextStep                                          | nextValue
+        "steady"          | 1    | { 15_000L }                                       | { 42.0d }
+        "jittery"         | 2    | { 15_000L + it.nextInt( 200 ) - 100 }             | { it.nextGaussian() * 1000 }
+        "equal timestamp" | 3    | { it.nextInt( 3 ) == 0 ? 0L : 15_000L }           | { it.nextInt( 100 ) as double }
+        "large gap"       | 4    | { it.nextInt( 4 ) == 0 ? 30L * 86_400_000 : 10L } | { it.nextDouble() }
+        "backwards"       | 5    | { it.nextInt( 5000 ) - 2500L }                    | { it.nextInt( 10 ) * 0.1d }
+        "arbitrary bits"  | 6    | { it.nextInt( 1 << 20 ) as long }                 | { Double.longBitsToDouble( it.nextLong() ) }
+    }
+
+    def "every timestamp code boundary reads back"() {
+        given:
+        def deltas = [ 0, 1, -63, 64, -64, 65, -255, 256, -256, 257, -2047, 2048, -2048, 2049, Integer.MAX_VALUE, -Integer.MAX_VALUE ]
+        def timestamps = [ 0L ]
+        long delta = 0
+        deltas.each { deltaOfDelta ->
+            delta += deltaOfDelta
+            timestamps << timestamps.last() + delta
+        }
+        def big = new GorillaBlock( 1024 )
+
+        when:
+        timestamps.each { assert big.append( it, 1.0d ) }
+
+        then:
+        decoded( big )[ 0 ] == timestamps
+    }
+
+    def "a full block refuses samples and a reset one starts over"() {
+        given:
+        int appended = 0
+        while( block.append( appended * 1000L, Double.longBitsToDouble( appended * 0x9E3779B97F4A7C15L ) ) ) {
+            appended++
+        }
+
+        expect:
+        appended > 1
+        block.count == appended
+        !block.append( appended * 1000L, 0.0d )
+
+        when:
+        block.reset()
+
+        then:
+        block.count == 0
+        block.append( 5L, 1.5d )
+        block.append( 5L, 1.5d )
+        decoded( block ) == [ [ 5L, 5L ], [ Double.doubleToRawLongBits( 1.5d ) ] * 2 ]
+    }
+
+    def "decode writes from the offset"() {
+        given:
+        block.append( 100L, 1.0d )
+        block.append( 200L, 2.0d )
+        long[] timestamps = new long[ 4 ]
+        double[] values = new double[ 4 ]
+
+        when:
+        block.decode( timestamps, values, 2 )
+
+        then:
+        timestamps as List == [ 0L, 0L, 100L, 200L ]
+        values as List == [ 0.0d, 0.0d, 1.0d, 2.0d ]
+    }
+
+    // values compared as raw bits, so that NaNs and signed zeros are checked too
+    private static List decoded( GorillaBlock block ) {
+        long[] timestamps = new long[ block.count ]
+        double[] values = new double[ block.count ]
+        block.decode( timestamps, values, 0 )
+        [ timestamps as List, values.collect { Double.doubleToRawLongBits( it ) } ]
+    }
+}
@@ -0,0 +1,125 @@
+package org.jmx.sink
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+class MetricRingBufferSpec extends Specification {
+    def series = new MetricSeries( "jvm.heap.used", new TagSet( "jvm-instance:node-1" ) )
+    def sink = new InMemoryMetricSink()
+
+    def "capacity is rounded up to a power of two"() {
+        expect:
+        new MetricRingBuffer( requested ).capacity() == capacity
+
+        where:
+        requested | capacity
+        2         | 2
+        3         | 4
+        4         | 4
+        1000      | 1024
+    }
+
+    def "samples come out in order as the positions wrap around the slots many times"() {
+        given:
+        def buffer = new MetricRingBuffer( 4 )
+        def expected = []
+
+        when:
+        (0..<100).each { round ->
+            (0..<3).each { i ->
+                long timestampMs = round * 3 + i
+                assert buffer.offer( series, MetricKind.GAUGE, timestampMs * 0.5d, timestampMs )
+                expected << timestampMs
+            }
+            assert buffer.drainTo( sink, 3 ) == 3
+        }
+
+        then:
+        buffer.size() == 0
+        sink.samples*.timestampMs == expected
+        sink.samples.every { it.value == it.timestampMs * 0.5d && it.series.is( series ) && it.kind == MetricKind.GAUGE }
+    }
+
+    def "a full queue refuses samples until a slot is drained"() {
+        given:
+        def buffer = new MetricRingBuffer( 4 )
+
+        expect:
+        (0..<4).every { buffer.offer( series, MetricKind.COUNT, it, it ) }
+        !buffer.offer( series, MetricKind.COUNT, 4, 4 )
+        buffer.size() == 4
+
+        when:
+        def drained = buffer.drainTo( sink, 1 )
+
+        then:
+        drained == 1
+        sink.samples*.timestampMs == [ 0L ]
+        buffer.offer( series, MetricKind.COUNT, 4, 4 )
+        !buffer.offer( series, MetricKind.COUNT, 5, 5 )
+
+        when:
+        sink.clear()
+        buffer.drainTo( sink, 10 )
+
+        then:
+        sink.samples*.timestampMs == [ 1L, 2L, 3L, 4L ]
+        buffer.size() == 0
+    }
+
+    def "drainTo stops at its limit and on an empty queue"() {
+        given:
+        def buffer = new MetricRingBuffer( 8 )
+        (0..<5).each { buffer.offer( series, MetricKind.GAUGE, it, it ) }
+
+        expect:
+        buffer.drainTo( sink, 2 ) == 2
+        buffer.drainTo( sink, 10 ) == 3
+        buffer.drainTo( sink, 10 ) == 0
+        sink.samples*.timestampMs == [ 0L, 1L, 2L, 3L, 4L ]
+    }
+
+    def "concurrent producers lose nothing the queue accepted"() {
+        given:
+        def buffer = new MetricRingBuffer( 64 )
+        def producers = (0..<4).collect { producer ->
+            Thread.start {
+                (0..<10_000).each { i ->
+                    while( !buffer.offer( series, MetricKind.GAUGE, producer, i ) ) {
+                        Thread.yield()
+                    }
+                }
+            }
+        }
+
+        when:
+        def drained = 0
+        while( drained < 40_000 ) {
+            drained += buffer.drainTo( sink, 16 )
+        }
+        producers*.join()
+
+        then:
+        drained == 40_000
+        sink.samples.groupBy { it.value }.collectEntries { producer, samples -> [ producer, samples*.timestampMs ] } ==
+          (0..<4).collectEntries { [ it as double, (0L..<10_000L).toList() ] }
+    }
+
+    def "the async sink delivers every sample it accepts"() {
+        given:
+        def asyncSink = new AsyncMetricSink( 1024, 2, [ sink ] )
+
+        when:
+        (0..<500).each { asyncSink.write( series, MetricKind.GAUGE, it, it ) }
+
+        then:
+        new PollingConditions( timeout: 5 ).eventually {
+            assert asyncSink.delivered == asyncSink.accepted
+        }
+        asyncSink.accepted + asyncSink.dropped == 500
+        sink.samples.size() == asyncSink.accepted
+
+        cleanup:
+        asyncSink.close()
+    }
+}